@@ -40,6 +40,11 @@ android {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
     }
+
+    testOptions {
+        // Plain JVM tests; android.util.Log and SystemClock return defaults (SystemClock reads 0)
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -49,4 +54,5 @@ dependencies {
     implementation(libs.bouncycastle.bcprov)
     implementation(libs.bouncycastle.bcpkix)
     implementation(libs.androidx.annotation)
+    testImplementation(libs.junit)
 }
\ No newline at end of file
@@ -6,19 +6,19 @@ import android.app.NotificationManager;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.net.nsd.NsdManager;
-import android.net.nsd.NsdServiceInfo;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.provider.Settings;
-import android.util.Log;
+import android.text.TextUtils;
 
 import java.io.IOException;
-import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.util.concurrent.CountDownLatch;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -27,104 +27,113 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class AdbConfigService extends Service {
     private static final String TAG = "ADBAutoEnable";
     private static final String CHANNEL_ID = "ADBAutoEnableChannel";
-    private static final String SERVICE_TYPE = "_adb-tls-connect._tcp";
-    private static final String PREFS_NAME = "ADBAutoEnablePrefs";
-    private static final String KEY_LAST_STATUS = "last_status";
-    private static final String KEY_LAST_PORT = "last_port";
-    private static final String KEY_TARGET_PORT = "target_port";
-    private static final int INITIAL_BOOT_DELAY_SECONDS = 30;
-    private static final int MAX_RETRY_ATTEMPTS = 3;
-    private static final int RETRY_DELAY_SECONDS = 10;
     private static final int WEB_SERVER_PORT = 9093;
+    // Per-candidate handshake budget during the port scan; an open non-ADB port must not stall a scan thread
+    private static final long SCAN_PROBE_BUDGET_MS = 2000;
 
-    private WebServer webServer;
-    private volatile boolean isConfiguring = false;
-
-    private SharedPreferences getPrefs() {
-        return NetworkUtils.getDeviceProtectedPrefs(this, PREFS_NAME);
+    private enum ConfigPhase {
+        DISCOVER,
+        SWITCH
     }
 
+    private WebServer webServer;
+    private NotificationRenderer notificationRenderer;
+    // Single worker: every operation here talks to adbd, and a tcpip switch restarts it under the others
+    private final TaskExecutor taskExecutor = new TaskExecutor(8);
+    private final JobRegistry jobRegistry = new JobRegistry(taskExecutor);
+    private AdbWatchdog watchdog;
+    private AdbKeepalive keepalive;
+    private AdbSettingsGuard settingsGuard;
+    private LinkMonitor linkMonitor;
+    private final AppConfig.Listener configListener = key -> {
+        if (AppConfig.KEY_WATCHDOG_ENABLED.equals(key)) {
+            applyWatchdogPreference();
+        } else if (AppConfig.KEY_KEEPALIVE_ENABLED.equals(key)) {
+            applyKeepalivePreference();
+        }
+    };
+    private AppConfig config;
+    // Progress of the current boot's pipeline; set by the boot thread
+    private volatile BootRecord bootRecord;
+
     @Override
     public void onCreate() {
         super.onCreate();
-        Log.i(TAG, "AdbConfigService onCreate() called");
+        AppLog.i(TAG, "AdbConfigService onCreate() called");
+        config = AppConfig.get(this);
         try {
             createNotificationChannel();
-            Log.i(TAG, "Notification channel created");
+            notificationRenderer = new NotificationRenderer(this, CHANNEL_ID, 1);
+            AppLog.i(TAG, "Notification channel created");
+
+            // Everything below reads the device IP and connectivity from this snapshot
+            NetworkUtils.startTracking(this);
+            jobRegistry.define(TaskExecutor.OP_BOOT, this::runBootConfiguration);
 
             // Only start web server if enabled in preferences
-            SharedPreferences prefs = getPrefs();
-            if (prefs.getBoolean("web_server_enabled", true)) {
+            if (config.isWebServerEnabled()) {
                 startWebServer();
             } else {
-                Log.i(TAG, "Web server is disabled by user preference");
+                AppLog.i(TAG, "Web server is disabled by user preference");
             }
+
+            watchdog = new AdbWatchdog(this, this::getTargetPort, this::recoverAdb);
+            keepalive = new AdbKeepalive(this, this::getTargetPort, this::recoverAdb);
+            config.addListener(configListener);
+            applyWatchdogPreference();
+            applyKeepalivePreference();
+
+            settingsGuard = new AdbSettingsGuard(this, this::recoverAdb);
+            settingsGuard.start();
+
+            linkMonitor = new LinkMonitor(this::onDeviceAddressChanged);
+            linkMonitor.start();
         } catch (Exception e) {
-            Log.e(TAG, "Error in onCreate", e);
+            AppLog.e(TAG, "Error in onCreate", e);
         }
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Log.i(TAG, "AdbConfigService onStartCommand() called");
-        Log.i(TAG, "Intent: " + (intent != null ? intent.toString() : "NULL"));
-        Log.i(TAG, "Flags: " + flags);
+        AppLog.i(TAG, "AdbConfigService onStartCommand() called");
+        AppLog.i(TAG, "Intent: " + (intent != null ? intent.toString() : "NULL"));
+        AppLog.i(TAG, "Flags: " + flags);
 
         if (intent != null) {
             Bundle extras = intent.getExtras();
             if (extras != null) {
                 for (String key : extras.keySet()) {
-                    Log.i(TAG, "Extra: " + key + " = " + extras.getString(key));
+                    AppLog.i(TAG, "Extra: " + key + " = " + extras.getString(key));
                 }
             } else {
-                Log.i(TAG, "Intent has no extras");
+                AppLog.i(TAG, "Intent has no extras");
             }
         }
 
         boolean isBootConfigMode = intent != null && intent.getBooleanExtra("boot_config", false);
-        Log.i(TAG, "isBootConfigMode: " + isBootConfigMode);
+        AppLog.i(TAG, "isBootConfigMode: " + isBootConfigMode);
 
         try {
             // Start as foreground service IMMEDIATELY
-            Notification notification = createNotification(
+            Notification notification = notificationRenderer.build(
                     isBootConfigMode ? "Starting ADB configuration..." : "Web server running on port " + WEB_SERVER_PORT
             );
             startForeground(1, notification);
-            Log.i(TAG, "Started foreground service with notification");
+            AppLog.i(TAG, "Started foreground service with notification");
             // Fix: Ensure wireless debugging is enabled on EVERY service start, not just boot events.
             enableWirelessDebuggingImmediately();
 
             // Only run boot configuration if this is a boot event
             if (isBootConfigMode) {
-                if (isConfiguring) {
-                    Log.w(TAG, "Configuration already in progress, ignoring duplicate request");
+                if (taskExecutor.isInFlight(TaskExecutor.OP_BOOT)) {
+                    AppLog.w(TAG, "Configuration already in progress, ignoring duplicate request");
                     return START_STICKY;
                 }
 
-                isConfiguring = true;
-
-                // Run configuration in background thread
-                new Thread(() -> {
-                    try {
-                        // Step 1: Wait for WiFi to be connected
-                        waitForWifiConnection();
-                        // Step 2: Wait for system to stabilize
-                        waitForBootStabilization();
-                        // Step 3: Attempt configuration with retries
-                        configureAdbWithRetries();
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error in configuration thread", e);
-                        updateStatus("Failed - " + e.getMessage());
-                        updateNotification("Web server running - Boot config failed");
-                    } finally {
-                        isConfiguring = false;
-                    }
-                    // Keep web server running
-                    updateNotification("Web server running on port " + WEB_SERVER_PORT);
-                }).start();
+                jobRegistry.start(TaskExecutor.OP_BOOT);
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error in onStartCommand", e);
+            AppLog.e(TAG, "Error in onStartCommand", e);
         }
 
         return START_STICKY;
@@ -138,17 +147,151 @@ public class AdbConfigService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        Log.i(TAG, "AdbConfigService onDestroy() called");
+        AppLog.i(TAG, "AdbConfigService onDestroy() called");
 
         if (webServer != null) {
             webServer.stop();
-            Log.i(TAG, "Web server stopped");
+            AppLog.i(TAG, "Web server stopped");
+        }
+
+        config.removeListener(configListener);
+        if (watchdog != null) {
+            watchdog.shutdown();
+        }
+        if (keepalive != null) {
+            keepalive.stop();
+        }
+        if (settingsGuard != null) {
+            settingsGuard.shutdown();
+        }
+        if (linkMonitor != null) {
+            linkMonitor.stop();
+        }
+        NetworkUtils.stopTracking(this);
+        taskExecutor.shutdown();
+        config.flush();
+    }
+
+    private void applyWatchdogPreference() {
+        if (config.isWatchdogEnabled()) {
+            watchdog.start();
+        } else {
+            watchdog.stop();
         }
     }
 
+    // Off by default: it keeps an ADB connection open for as long as the service runs
+    private void applyKeepalivePreference() {
+        if (config.isKeepaliveEnabled()) {
+            keepalive.start();
+        } else {
+            keepalive.stop();
+        }
+    }
+
+    /**
+     * Boot job body, shared by boot broadcasts and /api/test.
+     *
+     * @return the final status if ADB ended up on the target port
+     * @throws Exception carrying the final status otherwise
+     */
+    private String runBootConfiguration(JobRegistry.Job job) throws Exception {
+        long startedAt = SystemClock.elapsedRealtime();
+        boolean switchedThisBoot = false;
+        try {
+            job.update("loading boot record", 5);
+            bootRecord = BootRecord.load(this, config.prefs());
+            switchedThisBoot = bootRecord.has(BootRecord.Step.SWITCHED);
+            // Restarts and /api/test usually find adbd already on the target port
+            if (!tryFastPath()) {
+                int knownPort;
+                if (bootRecord.has(BootRecord.Step.PRECONDITIONS_SETTLED)) {
+                    // An earlier trigger in this boot already waited for network and adbd
+                    knownPort = bootRecord.getPort();
+                    AppLog.i(TAG, "Resuming boot configuration (last switch: "
+                            + bootRecord.getSwitchResult() + "), skipping boot wait");
+                } else {
+                    // Steps 1-2: Advance as soon as network, wireless debugging and adbd are up
+                    BootStateMachine bootStateMachine = new BootStateMachine(this,
+                            config.getLastPort(),
+                            (state, detail) -> {
+                                updateNotification(detail, state == BootStateMachine.State.READY
+                                        ? NotificationRenderer.PROGRESS_NONE : NotificationRenderer.PROGRESS_INDETERMINATE);
+                                job.update(detail, 10 + state.ordinal() * 12);
+                            });
+                    knownPort = bootStateMachine.run();
+                    bootRecord.markPreconditionsSettled();
+                }
+                // Step 3: Attempt configuration with retries
+                job.update("configuring", 70);
+                configureAdbWithRetries(knownPort);
+            }
+        } catch (InterruptedException e) {
+            AppLog.w(TAG, "Boot configuration cancelled");
+            updateStatus("Cancelled");
+            throw e;
+        } catch (Exception e) {
+            AppLog.e(TAG, "Error in configuration thread", e);
+            updateStatus("Failed - " + e.getMessage());
+            updateNotification("Web server running - Boot config failed");
+        } finally {
+            // Keep web server running
+            updateNotification("Web server running on port " + WEB_SERVER_PORT);
+            Metrics.BOOT_JOB.observeMs(SystemClock.elapsedRealtime() - startedAt);
+        }
+
+        String status = config.getLastStatus();
+        if (!status.startsWith("Success")) {
+            throw new Exception(status);
+        }
+        if (!switchedThisBoot) {
+            // First success since the device booted; later /api/test runs would only measure uptime
+            Metrics.setBootTimeToAdbMs(SystemClock.elapsedRealtime());
+        }
+        return status;
+    }
+
+    /**
+     * Called by the watchdog, the keepalive session or the settings guard when ADB fell off the
+     * target port after boot (e.g. sleep/wake on Android 14, adbd restart, wireless debugging
+     * switched off). Queues the same retrying pipeline as boot; repeated reports while a recovery
+     * is pending join it, and none is queued while the boot configuration is still running.
+     */
+    private void recoverAdb(String reason) {
+        if (taskExecutor.isInFlight(TaskExecutor.OP_BOOT)) {
+            AppLog.i(TAG, "Recovery (" + reason + ") skipped, boot configuration in progress");
+            return;
+        }
+        taskExecutor.execute(TaskExecutor.OP_RECOVER, () -> {
+            try {
+                AppLog.i(TAG, "Recovery triggered by " + reason);
+                enableWirelessDebuggingImmediately();
+                configureAdbWithRetries(-1);
+            } finally {
+                updateNotification("Web server running on port " + WEB_SERVER_PORT);
+            }
+        });
+    }
+
+    /**
+     * adbd keeps listening on all interfaces across a DHCP renewal or roam, so only the new address
+     * is checked; the pipeline re-runs only if ADB is not reachable there. Getting an address after
+     * the network was lost ({@code oldIP} null) is checked the same way.
+     */
+    private void onDeviceAddressChanged(String oldIP, String newIP) {
+        taskExecutor.execute(TaskExecutor.OP_ADDRESS_CHECK, () -> {
+            int targetPort = getTargetPort();
+            if (AdbHelper.fingerprint(newIP, targetPort, AdbDeadline.after(AdbHelper.FAST_PATH_BUDGET_MS))) {
+                AppLog.i(TAG, "ADB reachable on new address " + newIP + ":" + targetPort);
+                return;
+            }
+            recoverAdb("address change " + oldIP + " -> " + newIP);
+        });
+    }
+
     private void enableWirelessDebuggingImmediately() {
         try {
-            Log.i(TAG, "Step 0: Immediately enabling wireless debugging & disabling key revocation...");
+            AppLog.i(TAG, "Step 0: Immediately enabling wireless debugging & disabling key revocation...");
 
             // Enable Wireless Debugging
             Settings.Global.putInt(
@@ -164,294 +307,268 @@ public class AdbConfigService extends Service {
                     0L
             );
 
-            Log.i(TAG, "Wireless debugging and key revocation settings successfully updated early");
+            AppLog.i(TAG, "Wireless debugging and key revocation settings successfully updated early");
         } catch (SecurityException e) {
-            Log.e(TAG, "Early settings write failed - permission WRITE_SECURE_SETTINGS missing", e);
+            AppLog.e(TAG, "Early settings write failed - permission WRITE_SECURE_SETTINGS missing", e);
         } catch (Exception e) {
-            Log.e(TAG, "Early settings write unexpected error", e);
+            AppLog.e(TAG, "Early settings write unexpected error", e);
         }
     }
 
     private void startWebServer() {
         try {
-            webServer = new WebServer(this, WEB_SERVER_PORT);
+            webServer = new WebServer(this, WEB_SERVER_PORT, taskExecutor, jobRegistry);
             webServer.start();
-            Log.i(TAG, "Web server started on port " + WEB_SERVER_PORT);
+            AppLog.i(TAG, "Web server started on port " + WEB_SERVER_PORT);
         } catch (IOException e) {
-            Log.e(TAG, "Failed to start web server", e);
+            AppLog.e(TAG, "Failed to start web server", e);
         }
     }
 
-    private void waitForWifiConnection() throws InterruptedException {
-        Log.i(TAG, "Waiting for WiFi connection...");
-        updateNotification("Waiting for WiFi...");
-        int maxWaitSeconds = 60;
-        int waitedSeconds = 0;
-
-        while (waitedSeconds < maxWaitSeconds) {
-            if (isWifiConnected()) {
-                String deviceIP = getDeviceIP();
-                if (!deviceIP.equals("127.0.0.1") && !deviceIP.equals("0.0.0.0")) {
-                    Log.i(TAG, "WiFi connected! Device IP: " + deviceIP);
-                    return;
-                }
-            }
-            Thread.sleep(1000);
-            waitedSeconds++;
-            if (waitedSeconds % 10 == 0) {
-                Log.i(TAG, "Still waiting for WiFi... (" + waitedSeconds + "s)");
-                updateNotification("Waiting for WiFi... (" + waitedSeconds + "s)");
+    /**
+     * Runs the configuration pipeline as two phases, DISCOVER then SWITCH, retrying only the phase
+     * that failed. A discovered port is carried across attempts; a failed switch only sends the
+     * pipeline back to discovery when the port no longer answers as ADB.
+     */
+    private void configureAdbWithRetries(int knownPort) {
+        RetryPolicy policy = RetryPolicy.load(config.prefs());
+        Random random = new Random();
+        long budgetEndsAt = SystemClock.elapsedRealtime() + policy.totalBudgetMs;
+        List<String> history = new ArrayList<>();
+        int[] failures = new int[ConfigPhase.values().length];
+
+        int port = knownPort;
+        ConfigPhase phase = port > 0 ? ConfigPhase.SWITCH : ConfigPhase.DISCOVER;
+        AppLog.i(TAG, "Configuring with retry policy " + policy.toJson());
+
+        for (int attempt = 1; ; attempt++) {
+            if (Thread.currentThread().isInterrupted()) {
+                AppLog.w(TAG, "Configuration cancelled before attempt " + attempt);
+                updateStatus("Cancelled");
+                return;
             }
-        }
-        Log.w(TAG, "WiFi wait timeout - proceeding anyway");
-    }
-
-    private boolean isWifiConnected() {
-        return NetworkUtils.isNetworkConnected(this);
-    }
+            long attemptStartedAt = SystemClock.elapsedRealtime();
+            AppLog.i(TAG, "Configuration attempt " + attempt + " (" + phase + ")");
+            updateNotification("Attempt " + attempt + " - " + (phase == ConfigPhase.DISCOVER ? "discovering" : "switching"), NotificationRenderer.PROGRESS_INDETERMINATE);
 
-    private void waitForBootStabilization() throws InterruptedException {
-        Log.i(TAG, "Waiting " + INITIAL_BOOT_DELAY_SECONDS + " seconds for system to stabilize...");
-        for (int i = INITIAL_BOOT_DELAY_SECONDS; i > 0; i--) {
-            updateNotification("System stabilizing... " + i + "s");
-            Thread.sleep(1000);
-            if (i % 10 == 0) {
-                Log.i(TAG, "Boot stabilization: " + i + " seconds remaining");
+            try {
+                reassertWirelessDebugging();
+            } catch (SecurityException e) {
+                AppLog.e(TAG, "Permission denied - grant WRITE_SECURE_SETTINGS via ADB", e);
+                recordAttempt(history, attempt, phase, "permission_denied", port, attemptStartedAt, 0);
+                updateStatus("Failed - permission denied");
+                updateNotification("Failed - permission denied");
+                return;
             }
-        }
-        Log.i(TAG, "Boot stabilization complete");
-    }
 
-    private void configureAdbWithRetries() {
-        for (int attempt = 1; attempt <= MAX_RETRY_ATTEMPTS; attempt++) {
-            Log.i(TAG, "Configuration attempt " + attempt + " of " + MAX_RETRY_ATTEMPTS);
-            updateNotification("Attempt " + attempt + " of " + MAX_RETRY_ATTEMPTS);
-
-            boolean success = configureAdb();
-            if (success) {
-                Log.i(TAG, "Configuration successful on attempt " + attempt);
+            if (tryFastPath()) {
+                recordAttempt(history, attempt, phase, "fast_path", getTargetPort(), attemptStartedAt, 0);
                 return;
             }
 
-            if (attempt < MAX_RETRY_ATTEMPTS) {
-                Log.i(TAG, "Attempt " + attempt + " failed, waiting " + RETRY_DELAY_SECONDS + "s before retry...");
-                updateNotification("Failed, retrying in " + RETRY_DELAY_SECONDS + "s...");
-                try {
-                    Thread.sleep(RETRY_DELAY_SECONDS * 1000);
-                } catch (InterruptedException e) {
-                    Log.e(TAG, "Retry delay interrupted", e);
+            String outcome;
+            if (phase == ConfigPhase.DISCOVER) {
+                port = discoverAdbPort(policy);
+                if (port != -1) {
+                    recordAttempt(history, attempt, phase, "found", port, attemptStartedAt, 0);
+                    phase = ConfigPhase.SWITCH;
+                    continue;
+                }
+                outcome = "not_found";
+            } else {
+                if (switchToTargetPort(port, policy)) {
+                    AppLog.i(TAG, "Configuration successful on attempt " + attempt);
+                    recordAttempt(history, attempt, phase, "success", port, attemptStartedAt, 0);
                     return;
                 }
+                outcome = "switch_failed";
+                if (AdbHelper.fingerprintLocal(getDeviceIP(), port, AdbDeadline.after(AdbHelper.FAST_PATH_BUDGET_MS)) == null) {
+                    // The port went away (adbd restarted on a new one); only discovery can fix that
+                    AppLog.i(TAG, "ADB no longer answers on port " + port + ", returning to discovery");
+                    outcome = "port_gone";
+                }
             }
-        }
 
-        Log.e(TAG, "All " + MAX_RETRY_ATTEMPTS + " attempts failed");
-        updateStatus("Failed after " + MAX_RETRY_ATTEMPTS + " attempts");
-        updateNotification("Failed after " + MAX_RETRY_ATTEMPTS + " attempts");
+            failures[phase.ordinal()]++;
+            int phaseFailures = failures[phase.ordinal()];
+            long delay = policy.delayMs(phaseFailures, random);
+            long remainingBudget = budgetEndsAt - SystemClock.elapsedRealtime();
+
+            if (phaseFailures >= policy.maxAttempts || delay >= remainingBudget) {
+                recordAttempt(history, attempt, phase, outcome, port, attemptStartedAt, 0);
+                String reason = phaseFailures >= policy.maxAttempts
+                        ? phase + " failed " + phaseFailures + " times"
+                        : "retry budget of " + policy.totalBudgetMs + "ms exhausted";
+                AppLog.e(TAG, "Giving up: " + reason);
+                updateStatus("Failed after " + attempt + " attempts (" + reason + ")");
+                updateNotification("Failed after " + attempt + " attempts");
+                return;
+            }
+
+            recordAttempt(history, attempt, phase, outcome, port, attemptStartedAt, delay);
+            if ("port_gone".equals(outcome)) {
+                phase = ConfigPhase.DISCOVER;
+                port = -1;
+            }
+
+            AppLog.i(TAG, "Attempt " + attempt + " failed (" + outcome + "), retrying " + phase + " in " + delay + "ms...");
+            Metrics.CONFIG_RETRIES.inc();
+            updateNotification("Failed, retrying in " + (delay / 1000) + "s...");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                AppLog.w(TAG, "Retry delay interrupted, configuration cancelled");
+                updateStatus("Cancelled");
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
     }
 
-    private boolean configureAdb() {
-        try {
-            // Re-assert wireless debugging & auto-revocation settings
-            Settings.Global.putInt(
-                    getContentResolver(),
-                    "adb_wifi_enabled",
-                    1
-            );
-            Settings.Global.putLong(
-                    getContentResolver(),
-                    "adb_allowed_connection_time",
-                    0L
-            );
+    private void recordAttempt(List<String> history, int attempt, ConfigPhase phase, String outcome,
+                               int port, long startedAt, long nextDelayMs) {
+        Metrics.CONFIG_ATTEMPTS.get(outcome).inc();
+        history.add(String.format(Locale.US,
+                "{\"attempt\":%d,\"phase\":\"%s\",\"outcome\":\"%s\",\"port\":%d,\"durationMs\":%d,\"nextDelayMs\":%d}",
+                attempt, phase, outcome, port, SystemClock.elapsedRealtime() - startedAt, nextDelayMs));
+        config.setRetryHistory("[" + TextUtils.join(",", history) + "]");
+    }
 
-            Log.i(TAG, "Step 2: Waiting for ADB service to start...");
-            updateNotification("Waiting for ADB service...");
-            Thread.sleep(15000);
+    private void reassertWirelessDebugging() {
+        // Re-assert wireless debugging & auto-revocation settings
+        Settings.Global.putInt(
+                getContentResolver(),
+                "adb_wifi_enabled",
+                1
+        );
+        Settings.Global.putLong(
+                getContentResolver(),
+                "adb_allowed_connection_time",
+                0L
+        );
+    }
 
+    private int discoverAdbPort(RetryPolicy policy) {
+        try {
             String deviceIP = getDeviceIP();
-            Log.i(TAG, "Device IP: " + deviceIP);
+            AppLog.i(TAG, "Device IP: " + deviceIP);
 
             if (deviceIP.equals("127.0.0.1") || deviceIP.equals("0.0.0.0")) {
-                Log.e(TAG, "Invalid device IP: " + deviceIP);
+                AppLog.e(TAG, "Invalid device IP: " + deviceIP);
                 updateStatus("Failed - no valid IP address");
-                return false;
+                return -1;
             }
 
-            Log.i(TAG, "Step 3: Discovering ADB port...");
-            updateNotification("Discovering ADB port...");
+            AppLog.i(TAG, "Step 3: Discovering ADB port...");
+            updateNotification("Discovering ADB port...", NotificationRenderer.PROGRESS_INDETERMINATE);
             updateStatus("Discovering ADB port...");
 
-            int port = discoverAdbPortViaMdns();
+            int port = MdnsDiscovery.findAdbPort(this, deviceIP, MdnsDiscovery.DEFAULT_TIMEOUT_MS);
             if (port == -1) {
-                Log.i(TAG, "mDNS failed, falling back to port scan...");
-                updateNotification("mDNS failed, scanning ports...");
+                AppLog.i(TAG, "mDNS failed, falling back to port scan...");
+                updateNotification("mDNS failed, scanning ports...", NotificationRenderer.PROGRESS_INDETERMINATE);
                 updateStatus("mDNS failed, scanning ports...");
-                port = scanForAdbPort();
+                port = scanForAdbPort(policy.scanBudgetMs);
             }
 
             if (port == -1) {
-                Log.e(TAG, "Could not find ADB port");
+                AppLog.e(TAG, "Could not find ADB port");
                 updateStatus("Failed - port not found");
                 updateNotification("Failed - port not found");
-                return false;
+                return -1;
             }
 
-            Log.i(TAG, "Found ADB on port " + port);
+            AppLog.i(TAG, "Found ADB on port " + port);
             saveLastPort(port);
+            if (bootRecord != null) {
+                bootRecord.markPortDiscovered(port);
+            }
+            return port;
+        } catch (Exception e) {
+            AppLog.e(TAG, "Unexpected error during discovery", e);
+            updateStatus("Failed - " + e.getMessage());
+            updateNotification("Failed - error");
+            return -1;
+        }
+    }
 
+    private boolean switchToTargetPort(int port, RetryPolicy policy) {
+        try {
+            String deviceIP = getDeviceIP();
             int targetPort = getTargetPort();
-            Log.i(TAG, "Step 4: Switching to port " + targetPort + "...");
-            updateNotification("Switching to port " + targetPort + "...");
+            AppLog.i(TAG, "Step 4: Switching from port " + port + " to port " + targetPort + "...");
+            updateNotification("Switching to port " + targetPort + "...", NotificationRenderer.PROGRESS_INDETERMINATE);
             updateStatus("Switching to port " + targetPort + "...");
 
             AdbHelper adbHelper = new AdbHelper(this);
 
             // Try loopback first (avoids hangs on some devices), fall back to active device IP (Fixes #8)
-            boolean success = adbHelper.switchToPort("127.0.0.1", port, targetPort);
+            boolean success = adbHelper.switchToPort("127.0.0.1", port, targetPort,
+                    AdbDeadline.after(policy.switchBudgetMs));
             if (!success && !deviceIP.equals("127.0.0.1")) {
-                Log.i(TAG, "Switch failed via loopback, falling back to " + deviceIP + "...");
-                success = adbHelper.switchToPort(deviceIP, port, targetPort);
+                AppLog.i(TAG, "Switch failed via loopback, falling back to " + deviceIP + "...");
+                success = adbHelper.switchToPort(deviceIP, port, targetPort, AdbDeadline.after(policy.switchBudgetMs));
+            }
+
+            if (bootRecord != null) {
+                bootRecord.markSwitchResult(success, targetPort);
             }
 
             if (success) {
-                Log.i(TAG, "Successfully configured ADB on port " + targetPort + "!");
+                AppLog.i(TAG, "Successfully configured ADB on port " + targetPort + "!");
                 updateStatus("Success - ADB on port " + targetPort);
                 updateNotification("Success - ADB on port " + targetPort);
                 return true;
             } else {
-                Log.e(TAG, "Failed to switch to port " + targetPort);
+                AppLog.e(TAG, "Failed to switch to port " + targetPort);
                 updateStatus("Failed - could not switch port");
                 updateNotification("Failed - could not switch port");
                 return false;
             }
-
-        } catch (SecurityException e) {
-            Log.e(TAG, "Permission denied - grant WRITE_SECURE_SETTINGS via ADB", e);
-            updateStatus("Failed - permission denied");
-            updateNotification("Failed - permission denied");
-            return false;
-        } catch (InterruptedException e) {
-            Log.e(TAG, "Thread interrupted", e);
-            updateStatus("Failed - interrupted");
-            updateNotification("Failed - interrupted");
-            return false;
         } catch (Exception e) {
-            Log.e(TAG, "Unexpected error", e);
+            AppLog.e(TAG, "Unexpected error during switch", e);
             updateStatus("Failed - " + e.getMessage());
             updateNotification("Failed - error");
             return false;
         }
     }
 
-    @SuppressWarnings("deprecation")
-    private int discoverAdbPortViaMdns() {
-        final int[] discoveredPort = {-1};
-        final CountDownLatch latch = new CountDownLatch(1);
-        String deviceIP = getDeviceIP();
-        Log.i(TAG, "Looking for mDNS service on device IP: " + deviceIP);
-
-        NsdManager nsdManager = (NsdManager) getSystemService(Context.NSD_SERVICE);
-        if (nsdManager == null) {
-            Log.e(TAG, "NsdManager not available");
-            return -1;
+    /**
+     * Pre-flight check: if adbd already answers on the target port there is nothing to configure.
+     * Skipping saves discovery time and avoids restarting adbd with a redundant tcpip command.
+     */
+    private boolean tryFastPath() {
+        int targetPort = getTargetPort();
+        if (AdbHelper.checkFastPath(this, getDeviceIP(), targetPort) == null) {
+            return false;
         }
 
-        NsdManager.DiscoveryListener discoveryListener = new NsdManager.DiscoveryListener() {
-            @Override
-            public void onDiscoveryStarted(String serviceType) {
-                Log.i(TAG, "mDNS discovery started for " + serviceType);
-            }
-
-            @Override
-            public void onServiceFound(NsdServiceInfo serviceInfo) {
-                Log.i(TAG, "Service found: " + serviceInfo.getServiceName());
-                nsdManager.resolveService(serviceInfo, new NsdManager.ResolveListener() {
-                    @Override
-                    public void onResolveFailed(NsdServiceInfo serviceInfo, int errorCode) {
-                        Log.e(TAG, "Resolve failed: " + errorCode);
-                    }
-
-                    @Override
-                    public void onServiceResolved(NsdServiceInfo serviceInfo) {
-                        Log.i(TAG, "Service resolved: " + serviceInfo.getServiceName());
-                        if (serviceInfo.getHost() != null) {
-                            InetAddress hostAddress = serviceInfo.getHost();
-                            String host = hostAddress.getHostAddress();
-                            if (host == null) {
-                                Log.w(TAG, "Host address is null");
-                                return;
-                            }
-
-                            int port = serviceInfo.getPort();
-                            Log.i(TAG, "Host: " + host + ", Port: " + port);
-                            if (host.startsWith("127.") || host.equals("::1") ||
-                                    host.startsWith("192.168.") || host.startsWith("10.") ||
-                                    host.startsWith("172.") || host.startsWith("100.")) {
-                                if (host.equals(deviceIP)) {
-                                    Log.i(TAG, "Found matching device with IP: " + deviceIP + ", Port: " + port);
-                                    discoveredPort[0] = port;
-                                } else {
-                                    Log.w(TAG, "Skipping device with IP " + host + " (looking for " + deviceIP + ")");
-                                }
-                            }
-                        }
-                    }
-                });
-            }
-
-            @Override
-            public void onServiceLost(NsdServiceInfo serviceInfo) {
-                Log.i(TAG, "Service lost: " + serviceInfo.getServiceName());
-            }
-
-            @Override
-            public void onDiscoveryStopped(String serviceType) {
-                Log.i(TAG, "Discovery stopped: " + serviceType);
-            }
-
-            @Override
-            public void onStartDiscoveryFailed(String serviceType, int errorCode) {
-                Log.e(TAG, "Discovery start failed: error " + errorCode);
-                latch.countDown();
-            }
-
-            @Override
-            public void onStopDiscoveryFailed(String serviceType, int errorCode) {
-                Log.e(TAG, "Discovery stop failed: error " + errorCode);
-            }
-        };
+        AppLog.i(TAG, "Skipping configuration, ADB is already on the target port");
+        if (bootRecord != null) {
+            bootRecord.markSwitchResult(true, targetPort);
+        }
+        updateStatus("Success - ADB already on port " + targetPort);
+        updateNotification("Success - ADB on port " + targetPort);
+        return true;
+    }
 
+    private int scanForAdbPort(long budgetMs) {
+        long startedAt = SystemClock.elapsedRealtime();
         try {
-            nsdManager.discoverServices(SERVICE_TYPE, NsdManager.PROTOCOL_DNS_SD, discoveryListener);
-
-            boolean found = latch.await(10, TimeUnit.SECONDS);
-            if (!found) {
-                Log.i(TAG, "mDNS discovery window finished, final port: " + discoveredPort[0]);
-            }
-
-            try {
-                nsdManager.stopServiceDiscovery(discoveryListener);
-                Log.i(TAG, "Discovery stopped, using port: " + discoveredPort[0]);
-            } catch (Exception e) {
-                Log.e(TAG, "Error stopping discovery", e);
-            }
-
-        } catch (Exception e) {
-            Log.e(TAG, "mDNS discovery error", e);
+            return scanPorts(budgetMs);
+        } finally {
+            Metrics.PORT_SCAN.observeMs(SystemClock.elapsedRealtime() - startedAt);
         }
-
-        return discoveredPort[0];
     }
 
-    private int scanForAdbPort() {
-        Log.i(TAG, "Starting full ephemeral port scan (32768-60999)...");
-        SharedPreferences prefs = getPrefs();
-        int lastPort = prefs.getInt(KEY_LAST_PORT, -1);
+    private int scanPorts(long budgetMs) {
+        AppLog.i(TAG, "Starting full ephemeral port scan (32768-60999)...");
+        int lastPort = config.getLastPort();
 
         AdbHelper adbHelper = new AdbHelper(this);
 
-        if (lastPort > 0 && adbHelper.connect("127.0.0.1", lastPort)) {
-            Log.i(TAG, "Found ADB on previously used port: " + lastPort);
+        if (lastPort > 0 && adbHelper.connect("127.0.0.1", lastPort, AdbDeadline.after(SCAN_PROBE_BUDGET_MS))) {
+            AppLog.i(TAG, "Found ADB on previously used port: " + lastPort);
             return lastPort;
         }
 
@@ -468,12 +585,13 @@ public class AdbConfigService extends Service {
             executor.submit(() -> {
                 if (foundPort.get() != -1) return;
 
+                Metrics.PORTS_PROBED.inc();
                 try (Socket socket = new Socket()) {
                     socket.connect(new InetSocketAddress("127.0.0.1", currentPort), TIMEOUT_MS);
 
-                    if (adbHelper.connect("127.0.0.1", currentPort)) {
+                    if (adbHelper.connect("127.0.0.1", currentPort, AdbDeadline.after(SCAN_PROBE_BUDGET_MS))) {
                         if (foundPort.compareAndSet(-1, currentPort)) {
-                            Log.i(TAG, "Full scan found ADB on port: " + currentPort);
+                            AppLog.i(TAG, "Full scan found ADB on port: " + currentPort);
                         }
                     }
                 } catch (Exception ignored) {
@@ -483,9 +601,13 @@ public class AdbConfigService extends Service {
 
         executor.shutdown();
         try {
-            executor.awaitTermination(15, TimeUnit.SECONDS);
+            if (!executor.awaitTermination(budgetMs, TimeUnit.MILLISECONDS)) {
+                AppLog.w(TAG, "Port scan budget exhausted, abandoning remaining probes");
+            }
         } catch (InterruptedException e) {
-            Log.e(TAG, "Port scan interrupted", e);
+            AppLog.e(TAG, "Port scan interrupted", e);
+        } finally {
+            executor.shutdownNow();
         }
 
         return foundPort.get();
@@ -496,15 +618,15 @@ public class AdbConfigService extends Service {
     }
 
     private int getTargetPort() {
-        return getPrefs().getInt(KEY_TARGET_PORT, 5555);
+        return config.getTargetPort();
     }
 
     private void updateStatus(String status) {
-        getPrefs().edit().putString(KEY_LAST_STATUS, status).apply();
+        config.setLastStatus(status);
     }
 
     private void saveLastPort(int port) {
-        getPrefs().edit().putInt(KEY_LAST_PORT, port).apply();
+        config.setLastPort(port);
     }
 
     private void createNotificationChannel() {
@@ -520,23 +642,13 @@ public class AdbConfigService extends Service {
         }
     }
 
-    private Notification createNotification(String text) {
-        return new Notification.Builder(this, CHANNEL_ID)
-                .setContentTitle("ADB Auto-Enable")
-                .setContentText(text)
-                .setSmallIcon(android.R.drawable.ic_menu_preferences)
-                .build();
+    private void updateNotification(String text) {
+        updateNotification(text, NotificationRenderer.PROGRESS_NONE);
     }
 
-    private void updateNotification(String text) {
-        try {
-            Notification notification = createNotification(text);
-            NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-            if (manager != null) {
-                manager.notify(1, notification);
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error updating notification", e);
+    private void updateNotification(String text, int progress) {
+        if (notificationRenderer != null) {
+            notificationRenderer.render(text, progress);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.tpn.adbautoenable;
+
+import android.os.SystemClock;
+
+/**
+ * Absolute time budget for one ADB operation.
+ * A single deadline is created per operation and handed down through every phase
+ * (TCP connect, TLS handshake/auth, stream open, reads), so the operation as a whole
+ * can never run longer than the budget it was started with.
+ */
+public final class AdbDeadline {
+
+    /** The phase an operation was in when its budget ran out. */
+    public enum Phase {
+        CONNECT,
+        HANDSHAKE,
+        OPEN_STREAM,
+        READ
+    }
+
+    private final long budgetMs;
+    private final long expiresAtMs;
+
+    private AdbDeadline(long budgetMs) {
+        this.budgetMs = budgetMs;
+        this.expiresAtMs = SystemClock.elapsedRealtime() + budgetMs;
+    }
+
+    public static AdbDeadline after(long budgetMs) {
+        return new AdbDeadline(Math.max(0, budgetMs));
+    }
+
+    public long getBudgetMs() {
+        return budgetMs;
+    }
+
+    public long remainingMs() {
+        return Math.max(0, expiresAtMs - SystemClock.elapsedRealtime());
+    }
+
+    public boolean isExpired() {
+        return remainingMs() == 0;
+    }
+
+    /**
+     * Returns the smaller of the remaining budget and the given cap, for phases that
+     * have their own upper bound (e.g. a 50 ms probe inside a 5 s operation).
+     */
+    public long capMs(long capMs) {
+        return Math.min(capMs, remainingMs());
+    }
+
+    /**
+     * Returns the remaining budget, or throws if nothing is left to start the given phase.
+     */
+    public long checkRemaining(Phase phase) throws AdbTimeoutException {
+        long remaining = remainingMs();
+        if (remaining == 0) {
+            throw new AdbTimeoutException(phase, budgetMs);
+        }
+        return remaining;
+    }
+}
@@ -2,7 +2,7 @@ package com.tpn.adbautoenable;
 
 import android.content.Context;
 import android.os.Build;
-import android.util.Log;
+import android.os.SystemClock;
 import io.github.muntashirakon.adb.AbsAdbConnectionManager;
 import io.github.muntashirakon.adb.AdbStream;
 import androidx.annotation.NonNull;
@@ -16,12 +16,22 @@ import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.conscrypt.Conscrypt;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
@@ -35,9 +45,52 @@ import java.security.cert.X509Certificate;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
 
 public class AdbHelper {
     private static final String TAG = "ADBAutoEnable";
+
+    // Budgets used when a caller does not pass its own deadline
+    public static final long DEFAULT_CONNECT_BUDGET_MS = 5000;
+    public static final long DEFAULT_SWITCH_BUDGET_MS = 15000;
+    public static final long DEFAULT_GRANT_BUDGET_MS = 20000;
+    public static final long DEFAULT_PAIR_BUDGET_MS = 30000;
+    /** Budget for checking whether adbd already answers on the target port. */
+    public static final long FAST_PATH_BUDGET_MS = 1500;
+    private static final long FINGERPRINT_LOOPBACK_BUDGET_MS = 500;
+
+    // ADB wire protocol constants used by fingerprint()
+    private static final int A_CNXN = 0x4e584e43;
+    private static final int A_AUTH = 0x48545541;
+    private static final int A_STLS = 0x534c5453;
+    private static final int A_VERSION = 0x01000001;
+    private static final int MAX_PAYLOAD = 256 * 1024;
+
+    // Closes connections whose deadline expired; this is what unblocks a read stuck on a half-open adbd
+    private static final ScheduledExecutorService DEADLINE_WATCHDOG =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "adb-deadline");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // One pairing at a time, at most one waiting; a pairing stuck in libadb keeps the worker and the rest are refused
+    private static final ThreadPoolExecutor PAIRING_EXECUTOR = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1), r -> {
+                Thread thread = new Thread(r, "adb-pair");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     private final Context context;
 
     public AdbHelper(Context context) {
@@ -51,40 +104,82 @@ public class AdbHelper {
             Security.insertProviderAt(new BouncyCastleProvider(), 1);
             Security.insertProviderAt(Conscrypt.newProvider(), 2);
 
-            Log.i(TAG, "Security providers initialized successfully");
+            AppLog.i(TAG, "Security providers initialized successfully");
         } catch (Exception e) {
-            Log.e(TAG, "Error setting up security providers", e);
+            AppLog.e(TAG, "Error setting up security providers", e);
         }
     }
 
     public boolean pair(String host, int port, String code) {
+        return pair(host, port, code, AdbDeadline.after(DEFAULT_PAIR_BUDGET_MS));
+    }
+
+    /**
+     * The pairing server accepts a single TLS session, so there is no TCP probe here, and libadb's
+     * pairing socket can't be closed from outside; the call runs on a single pairing thread and is
+     * cancelled (interrupted) when the deadline expires.
+     */
+    public boolean pair(String host, int port, String code, AdbDeadline deadline) {
         SimpleAdbManager manager = null;
         try {
-            Log.i(TAG, "Pairing with " + host + ":" + port + " using code: " + code);
+            AppLog.i(TAG, "Pairing with " + host + ":" + port + " using code: " + code);
             manager = new SimpleAdbManager(context);
-            manager.pair(host, port, code);
-            Log.i(TAG, "Pairing successful!");
+            SimpleAdbManager pairingManager = manager;
+            Future<Boolean> pairing;
+            try {
+                pairing = PAIRING_EXECUTOR.submit(() -> pairingManager.pair(host, port, code));
+            } catch (RejectedExecutionException e) {
+                throw new IOException("An earlier pairing attempt is still running");
+            }
+            try {
+                if (!pairing.get(deadline.checkRemaining(AdbDeadline.Phase.HANDSHAKE), TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Pairing with " + host + ":" + port + " was rejected");
+                }
+            } catch (TimeoutException e) {
+                pairing.cancel(true);
+                PAIRING_EXECUTOR.purge();
+                throw new AdbTimeoutException(AdbDeadline.Phase.HANDSHAKE, deadline.getBudgetMs());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+            AppLog.i(TAG, "Pairing successful!");
             return true;
+        } catch (AdbTimeoutException e) {
+            AppLog.e(TAG, "Pairing failed: " + e.getMessage());
+            return false;
         } catch (Exception e) {
-            Log.e(TAG, "Pairing failed", e);
+            AppLog.e(TAG, "Pairing failed", e);
             return false;
         } finally {
             if (manager != null) {
                 try {
                     manager.close();
                 } catch (Exception e) {
-                    Log.e(TAG, "Error closing manager after pair", e);
+                    AppLog.e(TAG, "Error closing manager after pair", e);
                 }
             }
         }
     }
 
     public boolean connect(String host, int port) {
-        try (SimpleAdbManager manager = new SimpleAdbManager(context)) {
-            manager.connect(host, port);
+        return connect(host, port, AdbDeadline.after(DEFAULT_CONNECT_BUDGET_MS));
+    }
+
+    public boolean connect(String host, int port, AdbDeadline deadline) {
+        try (SimpleAdbManager manager = new SimpleAdbManager(context);
+             DeadlineGuard guard = new DeadlineGuard(deadline, manager)) {
+            try {
+                connectWithin(manager, host, port, guard);
+            } catch (Exception e) {
+                throw guard.classify(e);
+            }
             return true;
+        } catch (AdbTimeoutException e) {
+            AppLog.w(TAG, "Connect to " + host + ":" + port + " failed: " + e.getMessage());
+            return false;
         } catch (Exception e) {
-            Log.e(TAG, "Connect failed", e);
+            AppLog.e(TAG, "Connect failed", e);
             return false;
         }
     }
@@ -96,7 +191,7 @@ public class AdbHelper {
         }
         // Fall back to active host/IP if different (Fixes #8)
         if (!host.equals("127.0.0.1")) {
-            Log.i(TAG, "Self-grant failed via loopback, retrying via " + host + "...");
+            AppLog.i(TAG, "Self-grant failed via loopback, retrying via " + host + "...");
             return executeSelfGrant(host, port, packageName, permission);
         }
         return false;
@@ -104,51 +199,66 @@ public class AdbHelper {
 
     private boolean executeSelfGrant(String host, int port, String packageName, String permission) {
         SimpleAdbManager manager = null;
+        AdbDeadline deadline = AdbDeadline.after(DEFAULT_GRANT_BUDGET_MS);
         try {
-            Log.i(TAG, "Attempting self-grant on " + host + ":" + port + " for package " + packageName);
+            AppLog.i(TAG, "Attempting self-grant on " + host + ":" + port + " for package " + packageName);
             manager = new SimpleAdbManager(context);
-            manager.connect(host, port);
-
-            // Check if already granted
-            if (checkPermissionGranted(manager, packageName, permission)) {
-                Log.i(TAG, "Permission " + permission + " is already granted, skipping grant");
-                return true;
-            }
-
-            Log.i(TAG, "Connected, sending pm grant shell command...");
-            String command = "shell:pm grant " + packageName + " " + permission;
-            try (AdbStream stream = manager.openStream(command);
-                 InputStream is = stream.openInputStream()) {
-                byte[] buffer = new byte[1024];
-                while (is.read(buffer) != -1) {
-                    // Drain stream completely
+            try (DeadlineGuard guard = new DeadlineGuard(deadline, manager)) {
+                try {
+                    connectWithin(manager, host, port, guard);
+
+                    // Check if already granted
+                    if (checkPermissionGranted(manager, packageName, permission, guard)) {
+                        AppLog.i(TAG, "Permission " + permission + " is already granted, skipping grant");
+                        return true;
+                    }
+
+                    AppLog.i(TAG, "Connected, sending pm grant shell command...");
+                    String command = "shell:pm grant " + packageName + " " + permission;
+                    guard.enter(AdbDeadline.Phase.OPEN_STREAM);
+                    try (AdbStream stream = manager.openStream(command);
+                         InputStream is = stream.openInputStream()) {
+                        guard.enter(AdbDeadline.Phase.READ);
+                        byte[] buffer = new byte[1024];
+                        while (is.read(buffer) != -1) {
+                            // Drain stream completely
+                        }
+                    } catch (Exception e) {
+                        if (guard.isExpired()) {
+                            throw e;
+                        }
+                        AppLog.d(TAG, "Stream read completed: " + e.getMessage());
+                    }
+
+                    // Allow PackageManagerService 1 second to apply the permission change
+                    AppLog.i(TAG, "Waiting 1000ms for PackageManagerService to process grant...");
+                    Thread.sleep(deadline.capMs(1000));
+
+                    // Verify permission status
+                    boolean isGranted = checkPermissionGranted(manager, packageName, permission, guard);
+                    if (isGranted) {
+                        AppLog.i(TAG, "Successfully granted permission " + permission + "!");
+                        return true;
+                    } else {
+                        AppLog.w(TAG, "pm grant executed but dumpsys returned granted=false");
+                        return false;
+                    }
+                } catch (Exception e) {
+                    throw guard.classify(e);
                 }
-            } catch (Exception e) {
-                Log.d(TAG, "Stream read completed: " + e.getMessage());
-            }
-
-            // Allow PackageManagerService 1 second to apply the permission change
-            Log.i(TAG, "Waiting 1000ms for PackageManagerService to process grant...");
-            Thread.sleep(1000);
-
-            // Verify permission status
-            boolean isGranted = checkPermissionGranted(manager, packageName, permission);
-            if (isGranted) {
-                Log.i(TAG, "Successfully granted permission " + permission + "!");
-                return true;
-            } else {
-                Log.w(TAG, "pm grant executed but dumpsys returned granted=false");
-                return false;
             }
+        } catch (AdbTimeoutException e) {
+            AppLog.e(TAG, "Failed to grant permission on " + host + ":" + port + ": " + e.getMessage());
+            return false;
         } catch (Exception e) {
-            Log.e(TAG, "Failed to grant permission on " + host + ":" + port, e);
+            AppLog.e(TAG, "Failed to grant permission on " + host + ":" + port, e);
             return false;
         } finally {
             if (manager != null) {
                 try {
                     manager.close();
                 } catch (Exception e) {
-                    Log.e(TAG, "Error closing manager after selfGrant", e);
+                    AppLog.e(TAG, "Error closing manager after selfGrant", e);
                 }
             }
         }
@@ -163,50 +273,83 @@ public class AdbHelper {
      * @return true if command was sent successfully
      */
     public boolean switchToPort(String host, int port, int targetPort) {
+        return switchToPort(host, port, targetPort, AdbDeadline.after(DEFAULT_SWITCH_BUDGET_MS));
+    }
+
+    /**
+     * Same as {@link #switchToPort(String, int, int)}, bounded by the given deadline.
+     * The whole call (connect, handshake, tcpip command, restart wait) returns before
+     * the deadline expires; timeouts are logged with the phase they hit.
+     */
+    public boolean switchToPort(String host, int port, int targetPort, AdbDeadline deadline) {
+        long startedAt = SystemClock.elapsedRealtime();
+        boolean switched = attemptSwitch(host, port, targetPort, deadline);
+        Metrics.SWITCH.observeMs(SystemClock.elapsedRealtime() - startedAt);
+        Metrics.SWITCHES.get(switched ? "ok" : "failed").inc();
+        return switched;
+    }
+
+    private boolean attemptSwitch(String host, int port, int targetPort, AdbDeadline deadline) {
         SimpleAdbManager manager = null;
         try {
-            Log.i(TAG, "switchToPort: Starting with host=" + host + ", port=" + port + ", targetPort=" + targetPort);
+            AppLog.i(TAG, "switchToPort: Starting with host=" + host + ", port=" + port + ", targetPort=" + targetPort
+                    + ", budget=" + deadline.remainingMs() + "ms");
             manager = new SimpleAdbManager(context);
 
-            Log.i(TAG, "switchToPort: Calling connect(" + host + ":" + port + ")");
-            manager.connect(host, port);
-            Log.i(TAG, "switchToPort: connect() completed successfully");
-
-            Log.i(TAG, "switchToPort: Waiting for connection to stabilize");
-            Thread.sleep(200);
-
-            Log.i(TAG, "switchToPort: Sending tcpip:" + targetPort + " service command");
-            try (AdbStream stream = manager.openStream("tcpip:" + targetPort);
-                 InputStream inputStream = stream.openInputStream()) {
-
-                Log.i(TAG, "switchToPort: Reading response from stream");
-                byte[] buffer = new byte[1024];
-                int bytesRead = inputStream.read(buffer);
-
-                if (bytesRead > 0) {
-                    String response = new String(buffer, 0, bytesRead);
-                    Log.i(TAG, "switchToPort: Response received (" + bytesRead + " bytes): " + response);
-                } else {
-                    Log.i(TAG, "switchToPort: No response data received");
+            try (DeadlineGuard guard = new DeadlineGuard(deadline, manager)) {
+                try {
+                    AppLog.i(TAG, "switchToPort: Calling connect(" + host + ":" + port + ")");
+                    connectWithin(manager, host, port, guard);
+                    AppLog.i(TAG, "switchToPort: connect() completed successfully");
+
+                    AppLog.i(TAG, "switchToPort: Waiting for connection to stabilize");
+                    Thread.sleep(deadline.capMs(200));
+
+                    AppLog.i(TAG, "switchToPort: Sending tcpip:" + targetPort + " service command");
+                    guard.enter(AdbDeadline.Phase.OPEN_STREAM);
+                    try (AdbStream stream = manager.openStream("tcpip:" + targetPort);
+                         InputStream inputStream = stream.openInputStream()) {
+
+                        AppLog.i(TAG, "switchToPort: Reading response from stream");
+                        guard.enter(AdbDeadline.Phase.READ);
+                        byte[] buffer = new byte[1024];
+                        int bytesRead = inputStream.read(buffer);
+
+                        if (bytesRead > 0) {
+                            String response = new String(buffer, 0, bytesRead);
+                            AppLog.i(TAG, "switchToPort: Response received (" + bytesRead + " bytes): " + response);
+                        } else {
+                            AppLog.i(TAG, "switchToPort: No response data received");
+                        }
+                    } catch (Exception e) {
+                        if (guard.isExpired()) {
+                            throw e;
+                        }
+                        AppLog.d(TAG, "switchToPort stream read completed: " + e.getMessage());
+                    }
+                } catch (Exception e) {
+                    throw guard.classify(e);
                 }
-            } catch (Exception e) {
-                Log.d(TAG, "switchToPort stream read completed: " + e.getMessage());
             }
 
-            Log.i(TAG, "switchToPort: Waiting 3000ms for ADB to restart on port " + targetPort);
-            Thread.sleep(3000);
+            long restartWait = deadline.capMs(3000);
+            AppLog.i(TAG, "switchToPort: Waiting " + restartWait + "ms for ADB to restart on port " + targetPort);
+            Thread.sleep(restartWait);
 
-            Log.i(TAG, "switchToPort: Successfully switched to port " + targetPort);
+            AppLog.i(TAG, "switchToPort: Successfully switched to port " + targetPort);
             return true;
+        } catch (AdbTimeoutException e) {
+            AppLog.e(TAG, "switchToPort: Failed to switch to port " + targetPort + ": " + e.getMessage());
+            return false;
         } catch (Exception e) {
-            Log.e(TAG, "switchToPort: Failed to switch to port " + targetPort, e);
+            AppLog.e(TAG, "switchToPort: Failed to switch to port " + targetPort, e);
             return false;
         } finally {
             if (manager != null) {
                 try {
                     manager.close();
                 } catch (Exception e) {
-                    Log.e(TAG, "Error closing manager after switchToPort", e);
+                    AppLog.e(TAG, "Error closing manager after switchToPort", e);
                 }
             }
         }
@@ -219,35 +362,267 @@ public class AdbHelper {
         return switchToPort(host, port, 5555);
     }
 
-    private boolean checkPermissionGranted(SimpleAdbManager manager, String packageName, String permission) {
+    /**
+     * Cheap check for a live adbd on a port: sends a raw CNXN packet and accepts any
+     * ADB reply (CNXN, AUTH or STLS). No keys are involved, so it never triggers an
+     * authorization prompt and costs one round trip.
+     */
+    public static boolean fingerprint(String host, int port, AdbDeadline deadline) {
+        long startedAt = SystemClock.elapsedRealtime();
+        boolean live = probeFingerprint(host, port, deadline);
+        Metrics.HANDSHAKE.get("fingerprint").observeMs(SystemClock.elapsedRealtime() - startedAt);
+        Metrics.HANDSHAKES.get(live ? "fingerprint_ok" : "fingerprint_failed").inc();
+        return live;
+    }
+
+    private static boolean probeFingerprint(String host, int port, AdbDeadline deadline) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), (int) deadline.checkRemaining(AdbDeadline.Phase.CONNECT));
+            socket.setSoTimeout((int) deadline.checkRemaining(AdbDeadline.Phase.READ));
+
+            byte[] payload = "host::\0".getBytes(StandardCharsets.US_ASCII);
+            int checksum = 0;
+            for (byte b : payload) {
+                checksum += b & 0xff;
+            }
+            ByteBuffer packet = ByteBuffer.allocate(24 + payload.length).order(ByteOrder.LITTLE_ENDIAN);
+            packet.putInt(A_CNXN).putInt(A_VERSION).putInt(MAX_PAYLOAD).putInt(payload.length)
+                    .putInt(checksum).putInt(~A_CNXN).put(payload);
+            socket.getOutputStream().write(packet.array());
+
+            byte[] header = new byte[24];
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            in.readFully(header);
+            ByteBuffer reply = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            int command = reply.getInt(0);
+            int magic = reply.getInt(20);
+            return (command == A_CNXN || command == A_AUTH || command == A_STLS) && magic == ~command;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Fingerprints a port on loopback first, then on the device IP (some TV builds don't expose loopback).
+     *
+     * @return the host that answered, or null if neither did
+     */
+    public static String fingerprintLocal(String deviceIP, int port, AdbDeadline deadline) {
+        if (fingerprint("127.0.0.1", port, AdbDeadline.after(deadline.capMs(FINGERPRINT_LOOPBACK_BUDGET_MS)))) {
+            return "127.0.0.1";
+        }
+        if (!deviceIP.equals("127.0.0.1") && !deadline.isExpired() && fingerprint(deviceIP, port, deadline)) {
+            return deviceIP;
+        }
+        return null;
+    }
+
+    /**
+     * Fast path shared by the configuration pipeline and /api/switch: if adbd already answers on the
+     * target port there is nothing to switch. A hit is counted in {@link AppConfig}.
+     *
+     * @return the host that answered, or null if the port has to be configured
+     */
+    public static String checkFastPath(Context context, String deviceIP, int targetPort) {
+        String host = fingerprintLocal(deviceIP, targetPort, AdbDeadline.after(FAST_PATH_BUDGET_MS));
+        if (host != null) {
+            int hits = AppConfig.get(context).incrementFastPathHits();
+            AppLog.i(TAG, "Fast path: ADB already answering on " + host + ":" + targetPort + " (cache hit #" + hits + ")");
+        }
+        return host;
+    }
+
+    /**
+     * Opens an authenticated connection with one idle stream on {@code service} (e.g. track-jdwp, which
+     * adbd keeps open and only writes to when a debuggable process starts or exits). The deadline only
+     * bounds opening; the returned session stays open until adbd drops it or it is closed.
+     */
+    public Session openSession(String host, int port, String service, AdbDeadline deadline) throws Exception {
+        SimpleAdbManager manager = new SimpleAdbManager(context);
+        try (DeadlineGuard guard = new DeadlineGuard(deadline, manager)) {
+            try {
+                connectWithin(manager, host, port, guard);
+                guard.enter(AdbDeadline.Phase.OPEN_STREAM);
+                AdbStream stream = manager.openStream(service);
+                return new Session(manager, stream);
+            } catch (Exception e) {
+                try {
+                    manager.close();
+                } catch (Exception ignored) {
+                }
+                throw guard.classify(e);
+            }
+        }
+    }
+
+    /** An open ADB connection holding a single stream; see {@link #openSession}. */
+    public static final class Session implements Closeable {
+        private final SimpleAdbManager manager;
+        private final AdbStream stream;
+
+        private Session(SimpleAdbManager manager, AdbStream stream) {
+            this.manager = manager;
+            this.stream = stream;
+        }
+
+        /**
+         * Blocks, discarding whatever adbd writes, until the stream ends or the connection fails.
+         * Returns normally on a clean close; a reset or a call to {@link #close()} throws.
+         */
+        public void awaitClose() throws IOException {
+            try (InputStream inputStream = stream.openInputStream()) {
+                byte[] buffer = new byte[256];
+                while (inputStream.read(buffer) != -1) {
+                    // Payload (JDWP pid lists) is irrelevant, only the connection state matters
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                stream.close();
+            } catch (Exception ignored) {
+            }
+            try {
+                manager.close();
+            } catch (Exception e) {
+                AppLog.e(TAG, "Error closing manager after session", e);
+            }
+        }
+    }
+
+    private boolean checkPermissionGranted(SimpleAdbManager manager, String packageName, String permission,
+                                           DeadlineGuard guard) throws AdbTimeoutException {
         try {
-            Log.i(TAG, "Checking if permission is granted: " + permission);
+            AppLog.i(TAG, "Checking if permission is granted: " + permission);
             String command = "shell:dumpsys package " + packageName + " | grep " + permission;
 
             StringBuilder sb = new StringBuilder();
+            guard.enter(AdbDeadline.Phase.OPEN_STREAM);
             try (AdbStream stream = manager.openStream(command);
                  InputStream inputStream = stream.openInputStream()) {
 
+                guard.enter(AdbDeadline.Phase.READ);
                 byte[] buffer = new byte[1024];
                 int bytesRead;
                 while ((bytesRead = inputStream.read(buffer)) != -1) {
                     sb.append(new String(buffer, 0, bytesRead));
                 }
             } catch (Exception e) {
-                Log.d(TAG, "Stream check read completed: " + e.getMessage());
+                if (guard.isExpired()) {
+                    throw e;
+                }
+                AppLog.d(TAG, "Stream check read completed: " + e.getMessage());
             }
 
             String response = sb.toString();
-            Log.i(TAG, "Permission check response:\n" + response);
+            AppLog.i(TAG, "Permission check response:\n" + response);
             boolean isGranted = response.contains(permission + ": granted=true");
-            Log.i(TAG, "Permission " + permission + " is granted: " + isGranted);
+            AppLog.i(TAG, "Permission " + permission + " is granted: " + isGranted);
             return isGranted;
         } catch (Exception e) {
-            Log.e(TAG, "Error checking permission", e);
+            Exception classified = guard.classify(e);
+            if (classified instanceof AdbTimeoutException) {
+                throw (AdbTimeoutException) classified;
+            }
+            AppLog.e(TAG, "Error checking permission", e);
             return false;
         }
     }
 
+    /**
+     * Connects and runs the TLS handshake / auth with the remaining budget as libadb's wait timeout.
+     * A single connection is opened; a failure to reach the port is reported as the CONNECT phase,
+     * anything after that as HANDSHAKE.
+     */
+    private static void connectWithin(SimpleAdbManager manager, String host, int port, DeadlineGuard guard)
+            throws IOException, InterruptedException {
+        long startedAt = SystemClock.elapsedRealtime();
+        boolean connected = false;
+        try {
+            long remaining = guard.enter(AdbDeadline.Phase.CONNECT);
+            manager.setTimeout(remaining, TimeUnit.MILLISECONDS);
+            boolean established;
+            try {
+                established = manager.connect(host, port);
+            } catch (ConnectException | NoRouteToHostException | SocketTimeoutException e) {
+                if (guard.isExpired()) {
+                    throw guard.timeout();
+                }
+                throw e;
+            } catch (Exception e) {
+                guard.at(AdbDeadline.Phase.HANDSHAKE);
+                throw e;
+            }
+            if (!established) {
+                guard.at(AdbDeadline.Phase.HANDSHAKE);
+                if (guard.isExpired()) {
+                    throw guard.timeout();
+                }
+                throw new IOException("ADB connection to " + host + ":" + port + " was not established");
+            }
+            connected = true;
+        } finally {
+            Metrics.HANDSHAKE.get("connect").observeMs(SystemClock.elapsedRealtime() - startedAt);
+            Metrics.HANDSHAKES.get(connected ? "connect_ok" : "connect_failed").inc();
+        }
+    }
+
+    /**
+     * Tracks which phase an operation is in and force-closes its connection when the deadline
+     * expires, so blocking libadb calls fail instead of hanging on a half-open adbd.
+     */
+    private static final class DeadlineGuard implements AutoCloseable {
+        private final AdbDeadline deadline;
+        private final ScheduledFuture<?> expiry;
+        private volatile AdbDeadline.Phase phase = AdbDeadline.Phase.CONNECT;
+        private volatile boolean fired = false;
+
+        DeadlineGuard(AdbDeadline deadline, Closeable connection) {
+            this.deadline = deadline;
+            this.expiry = DEADLINE_WATCHDOG.schedule(() -> {
+                fired = true;
+                AppLog.w(TAG, "ADB deadline expired during " + phase + ", closing connection");
+                try {
+                    connection.close();
+                } catch (Exception ignored) {
+                }
+            }, deadline.remainingMs(), TimeUnit.MILLISECONDS);
+        }
+
+        long enter(AdbDeadline.Phase next) throws AdbTimeoutException {
+            phase = next;
+            return deadline.checkRemaining(next);
+        }
+
+        /** Moves to {@code next} without checking the budget, for classifying a failure after the fact. */
+        void at(AdbDeadline.Phase next) {
+            phase = next;
+        }
+
+        boolean isExpired() {
+            return fired || deadline.isExpired();
+        }
+
+        AdbTimeoutException timeout() {
+            return new AdbTimeoutException(phase, deadline.getBudgetMs());
+        }
+
+        /** Rewrites a failure caused by the expired deadline into a timeout for the current phase. */
+        Exception classify(Exception e) {
+            if (!(e instanceof AdbTimeoutException) && isExpired()) {
+                return timeout();
+            }
+            return e;
+        }
+
+        @Override
+        public void close() {
+            expiry.cancel(false);
+        }
+    }
+
     private static class SimpleAdbManager extends AbsAdbConnectionManager {
         private PrivateKey privateKey;
         private PublicKey publicKey;
@@ -257,47 +632,47 @@ public class AdbHelper {
         private final File certFile;
 
         public SimpleAdbManager(Context context) throws Exception {
-            Log.i(TAG, "SimpleAdbManager constructor starting");
+            AppLog.i(TAG, "SimpleAdbManager constructor starting");
             setApi(Build.VERSION.SDK_INT);
             keyFile = new File(context.getFilesDir(), "adb_key");
             pubKeyFile = new File(context.getFilesDir(), "adb_key.pub");
             certFile = new File(context.getFilesDir(), "adb_cert");
-            Log.i(TAG, "Key files: " + keyFile.getAbsolutePath());
+            AppLog.i(TAG, "Key files: " + keyFile.getAbsolutePath());
             loadOrGenerateKeyPair();
-            Log.i(TAG, "SimpleAdbManager initialized successfully");
+            AppLog.i(TAG, "SimpleAdbManager initialized successfully");
         }
 
         private void loadOrGenerateKeyPair() throws Exception {
-            Log.i(TAG, "Loading or generating key pair");
+            AppLog.i(TAG, "Loading or generating key pair");
             if (keyFile.exists() && pubKeyFile.exists() && certFile.exists()) {
-                Log.i(TAG, "Loading existing key pair and certificate");
+                AppLog.i(TAG, "Loading existing key pair and certificate");
                 try {
                     // Load private key
                     byte[] privateKeyBytes = readFileBytes(keyFile);
                     PKCS8EncodedKeySpec privateSpec = new PKCS8EncodedKeySpec(privateKeyBytes);
                     KeyFactory keyFactory = KeyFactory.getInstance("RSA");
                     privateKey = keyFactory.generatePrivate(privateSpec);
-                    Log.i(TAG, "Private key loaded");
+                    AppLog.i(TAG, "Private key loaded");
 
                     // Load public key
                     byte[] publicKeyBytes = readFileBytes(pubKeyFile);
                     X509EncodedKeySpec publicSpec = new X509EncodedKeySpec(publicKeyBytes);
                     publicKey = keyFactory.generatePublic(publicSpec);
-                    Log.i(TAG, "Public key loaded");
+                    AppLog.i(TAG, "Public key loaded");
 
                     // Load certificate
                     byte[] certBytes = readFileBytes(certFile);
                     CertificateFactory cf = CertificateFactory.getInstance("X.509");
                     certificate = (X509Certificate) cf.generateCertificate(new ByteArrayInputStream(certBytes));
-                    Log.i(TAG, "Certificate loaded");
+                    AppLog.i(TAG, "Certificate loaded");
 
                 } catch (Exception e) {
-                    Log.e(TAG, "Failed to load existing keys, generating new ones", e);
+                    AppLog.e(TAG, "Failed to load existing keys, generating new ones", e);
                     generateNewKeyPairAndCert();
                 }
 
             } else {
-                Log.i(TAG, "No existing keys found, generating new ones");
+                AppLog.i(TAG, "No existing keys found, generating new ones");
                 generateNewKeyPairAndCert();
             }
         }
@@ -320,25 +695,25 @@ public class AdbHelper {
         }
 
         private void generateNewKeyPairAndCert() throws Exception {
-            Log.i(TAG, "Generating new RSA key pair");
+            AppLog.i(TAG, "Generating new RSA key pair");
             KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
             keyGen.initialize(2048, new SecureRandom());
             KeyPair keyPair = keyGen.generateKeyPair();
             privateKey = keyPair.getPrivate();
             publicKey = keyPair.getPublic();
-            Log.i(TAG, "Key pair generated");
+            AppLog.i(TAG, "Key pair generated");
 
             // Generate self-signed certificate
-            Log.i(TAG, "Generating self-signed certificate");
+            AppLog.i(TAG, "Generating self-signed certificate");
             certificate = generateSelfSignedCertificate(keyPair);
-            Log.i(TAG, "Certificate generated");
+            AppLog.i(TAG, "Certificate generated");
 
             // Save keys
-            Log.i(TAG, "Saving keys to files");
+            AppLog.i(TAG, "Saving keys to files");
             writeFileBytes(keyFile, privateKey.getEncoded());
             writeFileBytes(pubKeyFile, publicKey.getEncoded());
             writeFileBytes(certFile, certificate.getEncoded());
-            Log.i(TAG, "Keys and certificate saved successfully");
+            AppLog.i(TAG, "Keys and certificate saved successfully");
         }
 
         private X509Certificate generateSelfSignedCertificate(KeyPair keyPair) throws Exception {
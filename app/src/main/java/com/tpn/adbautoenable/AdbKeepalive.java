@@ -0,0 +1,143 @@
+package com.tpn.adbautoenable;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds one authenticated, idle ADB connection to the target port. adbd closing or resetting it is
+ * reported to the listener straight away, so adbd restarts are noticed without any polling.
+ * Reconnects back off exponentially between {@link #MIN_BACKOFF_MS} and {@link #MAX_BACKOFF_MS}.
+ */
+public class AdbKeepalive {
+    private static final String TAG = "ADBAutoEnable";
+    // adbd keeps this stream open and stays silent unless a debuggable process starts or exits
+    private static final String IDLE_SERVICE = "track-jdwp";
+    private static final long OPEN_BUDGET_MS = 5000;
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60000;
+    // A session that lasted this long resets the backoff
+    private static final long STABLE_SESSION_MS = 60000;
+
+    private final Context context;
+    private final AdbHelper adbHelper;
+    private final AdbWatchdog.TargetPortProvider targetPortProvider;
+    private final AdbWatchdog.Listener listener;
+
+    // Guarded by this. Each worker thread gets its own flag, so a stopped thread can't clear the next one's
+    private Thread thread;
+    private AtomicBoolean active;
+    private AdbHelper.Session session;
+
+    public AdbKeepalive(Context context, AdbWatchdog.TargetPortProvider targetPortProvider, AdbWatchdog.Listener listener) {
+        this.context = context;
+        this.adbHelper = new AdbHelper(context);
+        this.targetPortProvider = targetPortProvider;
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        AtomicBoolean generation = new AtomicBoolean(true);
+        active = generation;
+        thread = new Thread(() -> run(generation), "adb-keepalive");
+        thread.setDaemon(true);
+        thread.start();
+        AppLog.i(TAG, "ADB keepalive started");
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        active.set(false);
+        thread.interrupt();
+        thread = null;
+        active = null;
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        AppLog.i(TAG, "ADB keepalive stopped");
+    }
+
+    private void run(AtomicBoolean generation) {
+        long backoff = MIN_BACKOFF_MS;
+        while (generation.get()) {
+            int targetPort = targetPortProvider.getTargetPort();
+            AdbHelper.Session opened = open(targetPort);
+            if (opened == null) {
+                backoff = sleepAndGrow(backoff);
+                continue;
+            }
+
+            // open() can't be interrupted; if stop() ran meanwhile, this session belongs to nobody
+            synchronized (this) {
+                if (!generation.get()) {
+                    opened.close();
+                    return;
+                }
+                session = opened;
+            }
+            Metrics.KEEPALIVE_SESSIONS.get("opened").inc();
+            long openedAt = SystemClock.elapsedRealtime();
+            AppLog.i(TAG, "Keepalive session open on port " + targetPort);
+
+            String reason;
+            try {
+                opened.awaitClose();
+                reason = "keepalive closed by adbd";
+            } catch (IOException e) {
+                reason = "keepalive reset (" + e.getMessage() + ")";
+            } finally {
+                synchronized (this) {
+                    if (session == opened) {
+                        session = null;
+                    }
+                }
+                opened.close();
+            }
+            if (!generation.get()) {
+                return;
+            }
+
+            Metrics.KEEPALIVE_SESSIONS.get("dropped").inc();
+            long lasted = SystemClock.elapsedRealtime() - openedAt;
+            AppLog.w(TAG, "Keepalive session on port " + targetPort + " ended after " + lasted + "ms: " + reason);
+            listener.onAdbLost(reason);
+
+            if (lasted >= STABLE_SESSION_MS) {
+                backoff = MIN_BACKOFF_MS;
+            }
+            backoff = sleepAndGrow(backoff);
+        }
+    }
+
+    private AdbHelper.Session open(int targetPort) {
+        String deviceIP = NetworkUtils.getLiveDeviceIP(context);
+        String host = AdbHelper.fingerprintLocal(deviceIP, targetPort, AdbDeadline.after(OPEN_BUDGET_MS));
+        if (host == null) {
+            return null;
+        }
+        try {
+            return adbHelper.openSession(host, targetPort, IDLE_SERVICE, AdbDeadline.after(OPEN_BUDGET_MS));
+        } catch (Exception e) {
+            AppLog.w(TAG, "Keepalive could not open a session on " + host + ":" + targetPort + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private long sleepAndGrow(long backoff) {
+        try {
+            Thread.sleep(backoff);
+        } catch (InterruptedException e) {
+            // Only stop() interrupts; the caller's loop sees its cleared flag
+            Thread.currentThread().interrupt();
+        }
+        return Math.min(backoff * 2, MAX_BACKOFF_MS);
+    }
+}
@@ -0,0 +1,98 @@
+package com.tpn.adbautoenable;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+
+/**
+ * Watches adb_wifi_enabled and adb_allowed_connection_time. When the system or a user changes
+ * either away from what the service wants, the settings are written back immediately and,
+ * after a short coalescing window, the listener is asked to bring ADB back on the target port
+ * (adbd comes back on a new random port after wireless debugging is toggled).
+ * Notifications caused by our own writes see the desired values and are ignored.
+ */
+public class AdbSettingsGuard {
+    private static final String TAG = "ADBAutoEnable";
+    private static final String ADB_WIFI_ENABLED = "adb_wifi_enabled";
+    private static final String ADB_ALLOWED_CONNECTION_TIME = "adb_allowed_connection_time";
+    private static final long COALESCE_MS = 500;
+
+    private final Context context;
+    private final AdbWatchdog.Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private ContentObserver observer;
+    private String pendingReason;
+
+    private final Runnable triggerRecovery = this::triggerRecovery;
+
+    public AdbSettingsGuard(Context context, AdbWatchdog.Listener listener) {
+        this.context = context;
+        this.listener = listener;
+    }
+
+    /** Must be called on the main thread. */
+    public void start() {
+        if (observer != null) {
+            return;
+        }
+        observer = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                onSettingChanged(uri);
+            }
+        };
+        ContentResolver resolver = context.getContentResolver();
+        resolver.registerContentObserver(Settings.Global.getUriFor(ADB_WIFI_ENABLED), false, observer);
+        resolver.registerContentObserver(Settings.Global.getUriFor(ADB_ALLOWED_CONNECTION_TIME), false, observer);
+        AppLog.i(TAG, "ADB settings guard started");
+    }
+
+    /** Must be called on the main thread. */
+    public void shutdown() {
+        if (observer != null) {
+            context.getContentResolver().unregisterContentObserver(observer);
+            observer = null;
+        }
+        handler.removeCallbacks(triggerRecovery);
+    }
+
+    private void triggerRecovery() {
+        listener.onAdbLost(pendingReason);
+    }
+
+    private void onSettingChanged(Uri uri) {
+        ContentResolver resolver = context.getContentResolver();
+        boolean wifiEnabled = Settings.Global.getInt(resolver, ADB_WIFI_ENABLED, 0) == 1;
+        boolean revocationDisabled = Settings.Global.getLong(resolver, ADB_ALLOWED_CONNECTION_TIME, -1L) == 0L;
+        if (wifiEnabled && revocationDisabled) {
+            // Our own write, or someone set what we want anyway
+            Metrics.SETTINGS_CHANGES.get("as_wanted").inc();
+            return;
+        }
+
+        AppLog.w(TAG, "ADB setting changed externally (" + uri + "): adb_wifi_enabled=" + wifiEnabled
+                + ", revocation disabled=" + revocationDisabled + " - re-asserting");
+        try {
+            Settings.Global.putInt(resolver, ADB_WIFI_ENABLED, 1);
+            Settings.Global.putLong(resolver, ADB_ALLOWED_CONNECTION_TIME, 0L);
+        } catch (SecurityException e) {
+            AppLog.e(TAG, "Cannot re-assert ADB settings - permission WRITE_SECURE_SETTINGS missing", e);
+            Metrics.SETTINGS_CHANGES.get("write_denied").inc();
+            return;
+        }
+        Metrics.SETTINGS_CHANGES.get("reasserted").inc();
+        AppConfig.get(context).incrementSettingsReasserts();
+
+        // Only a wireless debugging toggle moves adbd; the revocation timeout alone does not
+        if (!wifiEnabled) {
+            pendingReason = "adb_wifi_enabled turned off";
+            handler.removeCallbacks(triggerRecovery);
+            handler.postDelayed(triggerRecovery, COALESCE_MS);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.tpn.adbautoenable;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an ADB operation exhausts its {@link AdbDeadline}.
+ * Carries the phase that was running so callers and logs can tell a dead port
+ * (CONNECT) from a half-open adbd (HANDSHAKE/OPEN_STREAM/READ).
+ */
+public class AdbTimeoutException extends IOException {
+    private final AdbDeadline.Phase phase;
+
+    public AdbTimeoutException(AdbDeadline.Phase phase, long budgetMs) {
+        super("Timed out during " + phase + " (budget " + budgetMs + "ms)");
+        this.phase = phase;
+    }
+
+    public AdbDeadline.Phase getPhase() {
+        return phase;
+    }
+}
@@ -0,0 +1,138 @@
+package com.tpn.adbautoenable;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Supervises ADB after boot. Android 14 turns wireless debugging off and picks a new port after
+ * sleep, so screen-on, dream-stopped and network-available events trigger a cheap fingerprint of the
+ * target port; the (expensive) switch pipeline only runs when that check fails.
+ * Events are debounced, and checks are spaced at least {@link #MIN_CHECK_INTERVAL_MS} apart.
+ */
+public class AdbWatchdog {
+    private static final String TAG = "ADBAutoEnable";
+    private static final long DEBOUNCE_MS = 3000;
+    private static final long MIN_CHECK_INTERVAL_MS = 30000;
+    private static final long CHECK_BUDGET_MS = 1500;
+
+    public interface Listener {
+        /** Called when ADB no longer answers on the target port; should hand the work off and return quickly. */
+        void onAdbLost(String reason);
+    }
+
+    public interface TargetPortProvider {
+        int getTargetPort();
+    }
+
+    private final Context context;
+    private final TargetPortProvider targetPortProvider;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService checker = Executors.newSingleThreadExecutor(r -> new Thread(r, "adb-watchdog"));
+
+    private long lastCheckAt = 0;
+    private String pendingReason;
+    private boolean running = false;
+
+    private final Runnable checkRunnable = this::runCheck;
+
+    private final BroadcastReceiver wakeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            trigger(intent.getAction());
+        }
+    };
+
+    private final NetworkUtils.SnapshotListener networkListener = (previous, current) -> {
+        if (current.connected && (previous == null || !previous.connected)) {
+            trigger("network available");
+        }
+    };
+
+    public AdbWatchdog(Context context, TargetPortProvider targetPortProvider, Listener listener) {
+        this.context = context;
+        this.targetPortProvider = targetPortProvider;
+        this.listener = listener;
+    }
+
+    /** Must be called on the main thread. */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_DREAMING_STOPPED);
+        context.registerReceiver(wakeReceiver, filter);
+
+        NetworkUtils.addSnapshotListener(networkListener);
+        AppLog.i(TAG, "ADB watchdog started");
+    }
+
+    /** Must be called on the main thread. */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        handler.removeCallbacks(checkRunnable);
+
+        try {
+            context.unregisterReceiver(wakeReceiver);
+        } catch (IllegalArgumentException e) {
+            AppLog.w(TAG, "Watchdog receiver was not registered", e);
+        }
+        NetworkUtils.removeSnapshotListener(networkListener);
+        AppLog.i(TAG, "ADB watchdog stopped");
+    }
+
+    /** Permanently stops the watchdog and its checker thread. */
+    public void shutdown() {
+        stop();
+        checker.shutdownNow();
+    }
+
+    /**
+     * Schedules a check after the debounce window, or at the end of the rate-limit interval
+     * if the last check was too recent. Repeated triggers collapse into that one check.
+     */
+    public void trigger(String reason) {
+        handler.post(() -> {
+            if (!running) {
+                return;
+            }
+            pendingReason = reason;
+            long sinceLastCheck = SystemClock.elapsedRealtime() - lastCheckAt;
+            long delay = Math.max(DEBOUNCE_MS, MIN_CHECK_INTERVAL_MS - sinceLastCheck);
+            handler.removeCallbacks(checkRunnable);
+            handler.postDelayed(checkRunnable, delay);
+        });
+    }
+
+    private void runCheck() {
+        lastCheckAt = SystemClock.elapsedRealtime();
+        String reason = pendingReason;
+        checker.execute(() -> {
+            int targetPort = targetPortProvider.getTargetPort();
+            String deviceIP = NetworkUtils.getLiveDeviceIP(context);
+            if (AdbHelper.fingerprintLocal(deviceIP, targetPort, AdbDeadline.after(CHECK_BUDGET_MS)) != null) {
+                AppLog.d(TAG, "Watchdog (" + reason + "): ADB still answering on port " + targetPort);
+                Metrics.WATCHDOG_CHECKS.get("answering").inc();
+                return;
+            }
+            AppLog.w(TAG, "Watchdog (" + reason + "): ADB not answering on port " + targetPort + ", re-asserting");
+            Metrics.WATCHDOG_CHECKS.get("lost").inc();
+            listener.onAdbLost(reason);
+        });
+    }
+}
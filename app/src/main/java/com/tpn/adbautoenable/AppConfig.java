@@ -0,0 +1,237 @@
+package com.tpn.adbautoenable;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide typed settings and counters, loaded once from the device-protected prefs.
+ * Getters read volatile fields, so hot paths such as /api/status never touch SharedPreferences.
+ * Setters update memory immediately; the values are written back in one coalesced
+ * apply() shortly afterwards (the target port and pairing flag are written at once). Listeners hear about every change on the main thread.
+ * Structured state with its own keys (RetryPolicy, BootRecord) still uses {@link #prefs()}.
+ */
+public class AppConfig {
+    private static final String PREFS_NAME = "ADBAutoEnablePrefs";
+    private static final long WRITE_DELAY_MS = 250;
+
+    public static final String KEY_TARGET_PORT = "target_port";
+    public static final String KEY_LAST_PORT = "last_port";
+    public static final String KEY_PAIRED = "is_paired";
+    public static final String KEY_WEB_SERVER_ENABLED = "web_server_enabled";
+    public static final String KEY_WATCHDOG_ENABLED = "watchdog_enabled";
+    public static final String KEY_KEEPALIVE_ENABLED = "keepalive_enabled";
+    public static final String KEY_LAST_STATUS = "last_status";
+    public static final String KEY_RETRY_HISTORY = "retry_history";
+    public static final String KEY_FAST_PATH_HITS = "fast_path_hits";
+    public static final String KEY_SETTINGS_REASSERTS = "settings_reassert_count";
+
+    public interface Listener {
+        void onConfigChanged(String key);
+    }
+
+    private static volatile AppConfig instance;
+
+    private final SharedPreferences prefs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Object> pendingWrites = new HashMap<>();
+    private final Runnable flush = this::flush;
+
+    private volatile int targetPort;
+    private volatile int lastPort;
+    private volatile boolean paired;
+    private volatile boolean webServerEnabled;
+    private volatile boolean watchdogEnabled;
+    private volatile boolean keepaliveEnabled;
+    private volatile String lastStatus;
+    private volatile String retryHistory;
+    private volatile int fastPathHits;
+    private volatile long settingsReasserts;
+
+    public static AppConfig get(Context context) {
+        AppConfig config = instance;
+        if (config == null) {
+            synchronized (AppConfig.class) {
+                config = instance;
+                if (config == null) {
+                    config = new AppConfig(NetworkUtils.getDeviceProtectedPrefs(context.getApplicationContext(), PREFS_NAME));
+                    instance = config;
+                }
+            }
+        }
+        return config;
+    }
+
+    private AppConfig(SharedPreferences prefs) {
+        this.prefs = prefs;
+        targetPort = prefs.getInt(KEY_TARGET_PORT, 5555);
+        lastPort = prefs.getInt(KEY_LAST_PORT, -1);
+        paired = prefs.getBoolean(KEY_PAIRED, false);
+        webServerEnabled = prefs.getBoolean(KEY_WEB_SERVER_ENABLED, true);
+        watchdogEnabled = prefs.getBoolean(KEY_WATCHDOG_ENABLED, true);
+        keepaliveEnabled = prefs.getBoolean(KEY_KEEPALIVE_ENABLED, false);
+        lastStatus = prefs.getString(KEY_LAST_STATUS, "Not run yet");
+        retryHistory = prefs.getString(KEY_RETRY_HISTORY, "[]");
+        fastPathHits = prefs.getInt(KEY_FAST_PATH_HITS, 0);
+        settingsReasserts = prefs.getLong(KEY_SETTINGS_REASSERTS, 0);
+    }
+
+    /** Backing prefs, for state that manages its own keys. */
+    public SharedPreferences prefs() {
+        return prefs;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public int getTargetPort() {
+        return targetPort;
+    }
+
+    /** Written through immediately: losing it would make the next boot switch to the old port. */
+    public void setTargetPort(int port) {
+        targetPort = port;
+        changed(KEY_TARGET_PORT, port);
+        flush();
+    }
+
+    public int getLastPort() {
+        return lastPort;
+    }
+
+    public void setLastPort(int port) {
+        lastPort = port;
+        changed(KEY_LAST_PORT, port);
+    }
+
+    public boolean isPaired() {
+        return paired;
+    }
+
+    /** Written through immediately, like the target port. */
+    public void setPaired(boolean value) {
+        paired = value;
+        changed(KEY_PAIRED, value);
+        flush();
+    }
+
+    public boolean isWebServerEnabled() {
+        return webServerEnabled;
+    }
+
+    public void setWebServerEnabled(boolean value) {
+        webServerEnabled = value;
+        changed(KEY_WEB_SERVER_ENABLED, value);
+    }
+
+    public boolean isWatchdogEnabled() {
+        return watchdogEnabled;
+    }
+
+    public void setWatchdogEnabled(boolean value) {
+        watchdogEnabled = value;
+        changed(KEY_WATCHDOG_ENABLED, value);
+    }
+
+    public boolean isKeepaliveEnabled() {
+        return keepaliveEnabled;
+    }
+
+    public void setKeepaliveEnabled(boolean value) {
+        keepaliveEnabled = value;
+        changed(KEY_KEEPALIVE_ENABLED, value);
+    }
+
+    public String getLastStatus() {
+        return lastStatus;
+    }
+
+    public void setLastStatus(String status) {
+        lastStatus = status;
+        changed(KEY_LAST_STATUS, status);
+    }
+
+    /** JSON array of the last configuration run's attempts. */
+    public String getRetryHistory() {
+        return retryHistory;
+    }
+
+    public void setRetryHistory(String json) {
+        retryHistory = json;
+        changed(KEY_RETRY_HISTORY, json);
+    }
+
+    public int getFastPathHits() {
+        return fastPathHits;
+    }
+
+    public synchronized int incrementFastPathHits() {
+        int hits = ++fastPathHits;
+        changed(KEY_FAST_PATH_HITS, hits);
+        return hits;
+    }
+
+    public long getSettingsReasserts() {
+        return settingsReasserts;
+    }
+
+    public synchronized long incrementSettingsReasserts() {
+        long count = ++settingsReasserts;
+        changed(KEY_SETTINGS_REASSERTS, count);
+        return count;
+    }
+
+    /** Writes pending changes now instead of waiting for the coalescing delay. */
+    public void flush() {
+        Map<String, Object> writes;
+        synchronized (pendingWrites) {
+            if (pendingWrites.isEmpty()) {
+                return;
+            }
+            // Under the lock, so it can't cancel a flush posted by a change that lands right after the clear
+            handler.removeCallbacks(flush);
+            writes = new HashMap<>(pendingWrites);
+            pendingWrites.clear();
+        }
+        SharedPreferences.Editor editor = prefs.edit();
+        for (Map.Entry<String, Object> write : writes.entrySet()) {
+            Object value = write.getValue();
+            if (value instanceof Integer) {
+                editor.putInt(write.getKey(), (Integer) value);
+            } else if (value instanceof Long) {
+                editor.putLong(write.getKey(), (Long) value);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(write.getKey(), (Boolean) value);
+            } else {
+                editor.putString(write.getKey(), (String) value);
+            }
+        }
+        editor.apply();
+    }
+
+    private void changed(String key, Object value) {
+        synchronized (pendingWrites) {
+            // A flush is posted exactly while writes are pending
+            if (pendingWrites.isEmpty()) {
+                handler.postDelayed(flush, WRITE_DELAY_MS);
+            }
+            pendingWrites.put(key, value);
+        }
+        handler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onConfigChanged(key);
+            }
+        });
+    }
+}
@@ -0,0 +1,152 @@
+package com.tpn.adbautoenable;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Drop-in for android.util.Log that also keeps the last {@link #CAPACITY} entries in an
+ * in-process ring buffer. /api/logs reads from it by sequence number, so polling the log
+ * panel no longer forks logcat or copies the whole log buffer.
+ * Writers claim a sequence number atomically and publish an immutable entry; no locks.
+ */
+public final class AppLog {
+    static final int CAPACITY = 1024;
+
+    public static final class Entry {
+        public final long seq;
+        public final long timeMs;
+        public final char level;
+        public final String tag;
+        public final String message;
+
+        Entry(long seq, char level, String tag, String message) {
+            this.seq = seq;
+            this.timeMs = System.currentTimeMillis();
+            this.level = level;
+            this.tag = tag;
+            this.message = message;
+        }
+    }
+
+    public interface Listener {
+        /** Called on the logging thread; must not block or log. */
+        void onLog(Entry entry);
+    }
+
+    private static final AtomicLong nextSeq = new AtomicLong(1);
+    private static final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(CAPACITY);
+    private static volatile Listener listener;
+
+    private AppLog() {
+    }
+
+    public static void d(String tag, String msg) {
+        Log.d(tag, msg);
+        append('D', tag, msg, null);
+    }
+
+    public static void i(String tag, String msg) {
+        Log.i(tag, msg);
+        append('I', tag, msg, null);
+    }
+
+    public static void w(String tag, String msg) {
+        Log.w(tag, msg);
+        append('W', tag, msg, null);
+    }
+
+    public static void w(String tag, String msg, Throwable tr) {
+        Log.w(tag, msg, tr);
+        append('W', tag, msg, tr);
+    }
+
+    public static void e(String tag, String msg) {
+        Log.e(tag, msg);
+        append('E', tag, msg, null);
+    }
+
+    public static void e(String tag, String msg, Throwable tr) {
+        Log.e(tag, msg, tr);
+        append('E', tag, msg, tr);
+    }
+
+    /** Sets the single listener told about every new entry, or clears it with null. */
+    public static void setListener(Listener newListener) {
+        listener = newListener;
+    }
+
+    /** Sequence number the next entry will get. */
+    public static long nextSeq() {
+        return nextSeq.get();
+    }
+
+    /**
+     * Appends entries with a sequence number greater than {@code since} to {@code out} as JSON
+     * objects, oldest first.
+     *
+     * @return the cursor to pass as {@code since} next time
+     */
+    public static long appendSince(long since, StringBuilder out) {
+        long end = nextSeq.get();
+        long start = Math.max(since + 1, Math.max(1, end - CAPACITY));
+        boolean first = true;
+        for (long seq = start; seq < end; seq++) {
+            Entry entry = ring.get((int) (seq % CAPACITY));
+            if (entry == null || entry.seq < seq) {
+                // Claimed but not yet published; resume here next time instead of losing it
+                return seq - 1;
+            }
+            if (entry.seq > seq) {
+                // Overwritten by a newer lap while we were reading
+                continue;
+            }
+            if (!first) out.append(',');
+            first = false;
+            appendEntry(entry, out);
+        }
+        return end - 1;
+    }
+
+    /** Appends {@code entry} to {@code out} as a JSON object. */
+    public static void appendEntry(Entry entry, StringBuilder out) {
+        out.append("{\"seq\":").append(entry.seq)
+                .append(",\"time\":").append(entry.timeMs)
+                .append(",\"level\":\"").append(entry.level)
+                .append("\",\"message\":\"");
+        escapeJson(entry.message, out);
+        out.append("\"}");
+    }
+
+    /** Escapes {@code value} for a JSON string literal in a single pass. */
+    public static void escapeJson(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+    }
+
+    private static void append(char level, String tag, String msg, Throwable tr) {
+        String message = tr == null ? msg : msg + ": " + tr;
+        long seq = nextSeq.getAndIncrement();
+        Entry entry = new Entry(seq, level, tag, message);
+        ring.set((int) (seq % CAPACITY), entry);
+        Listener current = listener;
+        if (current != null) {
+            current.onLog(entry);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.tpn.adbautoenable;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.provider.Settings;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.EnumSet;
+
+/**
+ * Persisted progress of the boot pipeline, scoped to the current kernel boot.
+ * Lets redundant triggers in the same boot (LOCKED_BOOT_COMPLETED followed by BOOT_COMPLETED,
+ * START_STICKY restarts, /api/test) resume from the last completed step instead of starting over.
+ * A record written under a different boot id is discarded on load.
+ */
+public class BootRecord {
+    private static final String TAG = "ADBAutoEnable";
+    private static final String BOOT_ID_PATH = "/proc/sys/kernel/random/boot_id";
+    private static final String KEY_BOOT_ID = "boot_record_id";
+    private static final String KEY_STEPS = "boot_record_steps";
+    private static final String KEY_PORT = "boot_record_port";
+    private static final String KEY_SWITCH_RESULT = "boot_record_switch_result";
+
+    public enum Step {
+        PRECONDITIONS_SETTLED,
+        PORT_DISCOVERED,
+        SWITCHED
+    }
+
+    private final SharedPreferences prefs;
+    private final String bootId;
+    private final EnumSet<Step> steps = EnumSet.noneOf(Step.class);
+    private int port = -1;
+    private String switchResult = "";
+
+    private BootRecord(SharedPreferences prefs, String bootId) {
+        this.prefs = prefs;
+        this.bootId = bootId;
+    }
+
+    public static BootRecord load(Context context, SharedPreferences prefs) {
+        BootRecord record = new BootRecord(prefs, readBootId(context));
+        if (!record.bootId.equals(prefs.getString(KEY_BOOT_ID, null))) {
+            AppLog.i(TAG, "New boot " + record.bootId + ", starting a fresh boot record");
+            record.save();
+            return record;
+        }
+
+        for (String name : prefs.getString(KEY_STEPS, "").split(",")) {
+            if (name.isEmpty()) continue;
+            try {
+                record.steps.add(Step.valueOf(name));
+            } catch (IllegalArgumentException e) {
+                AppLog.w(TAG, "Ignoring unknown boot step: " + name);
+            }
+        }
+        record.port = prefs.getInt(KEY_PORT, -1);
+        record.switchResult = prefs.getString(KEY_SWITCH_RESULT, "");
+        AppLog.i(TAG, "Loaded boot record for boot " + record.bootId + ": steps=" + record.steps
+                + ", port=" + record.port + ", switch=" + record.switchResult);
+        return record;
+    }
+
+    public synchronized boolean has(Step step) {
+        return steps.contains(step);
+    }
+
+    public synchronized int getPort() {
+        return port;
+    }
+
+    public synchronized String getSwitchResult() {
+        return switchResult;
+    }
+
+    public synchronized void markPreconditionsSettled() {
+        steps.add(Step.PRECONDITIONS_SETTLED);
+        save();
+    }
+
+    public synchronized void markPortDiscovered(int discoveredPort) {
+        steps.add(Step.PORT_DISCOVERED);
+        port = discoveredPort;
+        save();
+    }
+
+    public synchronized void markSwitchResult(boolean success, int targetPort) {
+        if (success) {
+            steps.add(Step.SWITCHED);
+        } else {
+            steps.remove(Step.SWITCHED);
+        }
+        switchResult = (success ? "success:" : "failed:") + targetPort;
+        save();
+    }
+
+    private void save() {
+        StringBuilder joined = new StringBuilder();
+        for (Step step : steps) {
+            if (joined.length() > 0) joined.append(',');
+            joined.append(step.name());
+        }
+        prefs.edit()
+                .putString(KEY_BOOT_ID, bootId)
+                .putString(KEY_STEPS, joined.toString())
+                .putInt(KEY_PORT, port)
+                .putString(KEY_SWITCH_RESULT, switchResult)
+                .apply();
+    }
+
+    private static String readBootId(Context context) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(BOOT_ID_PATH))) {
+            String line = reader.readLine();
+            if (line != null && !line.trim().isEmpty()) {
+                return line.trim();
+            }
+        } catch (Exception e) {
+            AppLog.w(TAG, "Cannot read " + BOOT_ID_PATH + ", falling back to boot count", e);
+        }
+        int bootCount = Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+        if (bootCount != -1) {
+            return "boot_count:" + bootCount;
+        }
+        // Wall-clock boot time; a clock change can only make it look like a new boot, which just starts fresh
+        long bootMinute = Math.round((System.currentTimeMillis() - SystemClock.elapsedRealtime()) / 60000.0);
+        AppLog.w(TAG, "No boot count either, keying the boot record by boot time");
+        return "boot_time:" + bootMinute;
+    }
+}
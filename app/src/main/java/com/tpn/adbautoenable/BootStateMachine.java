@@ -0,0 +1,181 @@
+package com.tpn.adbautoenable;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.Settings;
+
+/**
+ * Drives the boot sequence from system events instead of fixed sleeps.
+ * Each state advances the moment its precondition is signalled (network snapshot update,
+ * adb_wifi_enabled observer, adbd found by {@link SpeculativeDiscovery} or its mDNS watch
+ * failing to start); the timeouts below are only safety nets for devices that never deliver
+ * the event.
+ */
+public class BootStateMachine {
+    private static final String TAG = "ADBAutoEnable";
+    private static final String ADB_WIFI_ENABLED = "adb_wifi_enabled";
+
+    static final long NETWORK_TIMEOUT_MS = 60000;
+    static final long WIRELESS_DEBUGGING_TIMEOUT_MS = 10000;
+    // Stabilization gate, counted from network-up: previously a fixed 30s delay plus a 15s wait for the ADB service
+    static final long ADBD_TIMEOUT_MS = 45000;
+    // What is left of the gate once adbd already completed a handshake
+    static final long CONFIRMED_SETTLE_MS = 2000;
+
+    public enum State {
+        IDLE,
+        WAITING_FOR_NETWORK,
+        WAITING_FOR_WIRELESS_DEBUGGING,
+        WAITING_FOR_ADBD,
+        READY
+    }
+
+    public interface Listener {
+        void onStateChanged(State state, String detail);
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final SpeculativeDiscovery discovery;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Object lock = new Object();
+
+    private volatile State state = State.IDLE;
+
+    private final NetworkUtils.SnapshotListener networkListener = (previous, current) -> signal();
+    private ContentObserver adbWifiObserver;
+
+    /**
+     * @param lastPort last port adbd was found on, handed to speculative discovery (-1 if unknown)
+     */
+    public BootStateMachine(Context context, int lastPort, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        this.discovery = new SpeculativeDiscovery(context, lastPort, this::signal);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Runs the machine to {@link State#READY} on the calling thread.
+     *
+     * @return the ADB port found by speculative discovery (handshake-confirmed if possible,
+     *         otherwise the mDNS-announced one), or -1 if nothing was found
+     */
+    public int run() throws InterruptedException {
+        long startedAt = SystemClock.elapsedRealtime();
+        try {
+            registerNetworkListener();
+            registerAdbWifiObserver();
+
+            transition(State.WAITING_FOR_NETWORK, "Waiting for WiFi...");
+            if (!await(this::isNetworkReady, NETWORK_TIMEOUT_MS)) {
+                AppLog.w(TAG, "WiFi wait timeout - proceeding anyway");
+            } else {
+                AppLog.i(TAG, "WiFi connected! Device IP: " + NetworkUtils.getLiveDeviceIP(context));
+            }
+
+            // Discovery overlaps the rest of the wait; its result is only used once the gate opens
+            long gateOpensAt = SystemClock.elapsedRealtime() + ADBD_TIMEOUT_MS;
+            discovery.start();
+
+            transition(State.WAITING_FOR_WIRELESS_DEBUGGING, "Waiting for wireless debugging...");
+            if (!await(this::isAdbWifiEnabled, WIRELESS_DEBUGGING_TIMEOUT_MS)) {
+                AppLog.w(TAG, "adb_wifi_enabled still off after " + WIRELESS_DEBUGGING_TIMEOUT_MS + "ms - proceeding anyway");
+            }
+
+            transition(State.WAITING_FOR_ADBD, "Waiting for ADB service...");
+            long gateRemaining = Math.max(0, gateOpensAt - SystemClock.elapsedRealtime());
+            if (!await(() -> discovery.getConfirmedPort() != -1 || discovery.hasMdnsFailed(), gateRemaining)) {
+                AppLog.w(TAG, "adbd not confirmed within the stabilization gate - falling back to discovery");
+            } else if (discovery.getConfirmedPort() == -1) {
+                // Without the mDNS watch the gate would just run out; the pipeline's own discovery and scan take over
+                AppLog.w(TAG, "mDNS watch failed to start - skipping the rest of the stabilization gate");
+            } else {
+                long settle = Math.min(CONFIRMED_SETTLE_MS, Math.max(0, gateOpensAt - SystemClock.elapsedRealtime()));
+                AppLog.i(TAG, "adbd already answering on port " + discovery.getConfirmedPort()
+                        + ", shrinking stabilization gate to " + settle + "ms");
+                Thread.sleep(settle);
+            }
+
+            int port = discovery.getBestPort();
+            transition(State.READY, port != -1 ? "ADB service found on port " + port : "Discovering ADB port...");
+            AppLog.i(TAG, "Boot preconditions settled after " + (SystemClock.elapsedRealtime() - startedAt) + "ms");
+            return port;
+        } finally {
+            release();
+        }
+    }
+
+    /** Unregisters every callback; safe to call more than once. */
+    public void release() {
+        NetworkUtils.removeSnapshotListener(networkListener);
+        if (adbWifiObserver != null) {
+            context.getContentResolver().unregisterContentObserver(adbWifiObserver);
+            adbWifiObserver = null;
+        }
+        discovery.stop();
+    }
+
+    private void transition(State next, String detail) {
+        AppLog.i(TAG, "Boot state: " + state + " -> " + next);
+        state = next;
+        listener.onStateChanged(next, detail);
+    }
+
+    private boolean await(Condition condition, long timeoutMs) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        synchronized (lock) {
+            while (!condition.isMet()) {
+                long remaining = deadline - SystemClock.elapsedRealtime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                lock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    private void signal() {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    private boolean isNetworkReady() {
+        if (!NetworkUtils.isNetworkConnected(context)) {
+            return false;
+        }
+        String deviceIP = NetworkUtils.getLiveDeviceIP(context);
+        return !deviceIP.equals("127.0.0.1") && !deviceIP.equals("0.0.0.0");
+    }
+
+    private boolean isAdbWifiEnabled() {
+        return Settings.Global.getInt(context.getContentResolver(), ADB_WIFI_ENABLED, 0) == 1;
+    }
+
+    private void registerNetworkListener() {
+        NetworkUtils.addSnapshotListener(networkListener);
+    }
+
+    private void registerAdbWifiObserver() {
+        adbWifiObserver = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                signal();
+            }
+        };
+        context.getContentResolver().registerContentObserver(
+                Settings.Global.getUriFor(ADB_WIFI_ENABLED), false, adbWifiObserver);
+    }
+}
@@ -0,0 +1,145 @@
+package com.tpn.adbautoenable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Replaces NanoHTTPD's thread-per-connection runner with a fixed pool of workers and a bounded
+ * accept queue. A connection that finds both full gets a canned 503 straight from the accept
+ * thread and is closed, so a LAN scanner can no longer make the service start hundreds of threads.
+ * Idle workers exit after {@link #IDLE_THREAD_MS}.
+ */
+public class BoundedAsyncRunner implements NanoHTTPD.AsyncRunner {
+    private static final String TAG = "ADBAutoEnable";
+    private static final long IDLE_THREAD_MS = 30000;
+    private static final byte[] OVERLOADED = ("HTTP/1.1 503 Service Unavailable\r\n"
+            + "Retry-After: 1\r\nContent-Type: text/plain\r\nContent-Length: 11\r\nConnection: close\r\n\r\n"
+            + "Overloaded\n").getBytes(StandardCharsets.US_ASCII);
+
+    /** Client handler that keeps its socket so a rejected connection can still be answered. */
+    public static final class Connection extends NanoHTTPD.ClientHandler {
+        final Socket socket;
+
+        public Connection(NanoHTTPD server, InputStream inputStream, Socket socket) {
+            server.super(inputStream, socket);
+            this.socket = socket;
+        }
+    }
+
+    private final class Task implements Runnable {
+        final NanoHTTPD.ClientHandler handler;
+
+        Task(NanoHTTPD.ClientHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            synchronized (running) {
+                running.add(handler);
+                peakActive.accumulateAndGet(running.size(), Math::max);
+            }
+            handler.run();
+        }
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final List<NanoHTTPD.ClientHandler> running = new ArrayList<>();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    /**
+     * @param workers    connections served at the same time, long-lived streams included
+     * @param queueLimit accepted connections allowed to wait for a worker
+     */
+    public BoundedAsyncRunner(int workers, int queueLimit) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        pool = new ThreadPoolExecutor(workers, workers, IDLE_THREAD_MS, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueLimit),
+                r -> new Thread(r, "http-worker-" + threadNumber.incrementAndGet()));
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void exec(NanoHTTPD.ClientHandler handler) {
+        try {
+            pool.execute(new Task(handler));
+            accepted.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            AppLog.w(TAG, "HTTP overloaded (" + getActive() + " active, " + getQueued() + " queued), rejecting connection");
+            reject(handler);
+        }
+    }
+
+    @Override
+    public void closed(NanoHTTPD.ClientHandler handler) {
+        synchronized (running) {
+            running.remove(handler);
+        }
+    }
+
+    @Override
+    public void closeAll() {
+        List<NanoHTTPD.ClientHandler> handlers;
+        synchronized (running) {
+            handlers = new ArrayList<>(running);
+        }
+        for (NanoHTTPD.ClientHandler handler : handlers) {
+            handler.close();
+        }
+        for (Runnable queued : pool.getQueue().toArray(new Runnable[0])) {
+            if (pool.remove(queued)) {
+                ((Task) queued).handler.close();
+            }
+        }
+    }
+
+    public int getActive() {
+        synchronized (running) {
+            return running.size();
+        }
+    }
+
+    public int getQueued() {
+        return pool.getQueue().size();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public String toJson() {
+        return String.format(Locale.US,
+                "{\"workers\":%d,\"active\":%d,\"queued\":%d,\"peakActive\":%d,\"accepted\":%d,\"rejected\":%d}",
+                pool.getMaximumPoolSize(), getActive(), getQueued(), peakActive.get(), accepted.get(), rejected.get());
+    }
+
+    private static void reject(NanoHTTPD.ClientHandler handler) {
+        if (handler instanceof Connection) {
+            try {
+                OutputStream out = ((Connection) handler).socket.getOutputStream();
+                out.write(OVERLOADED);
+                out.flush();
+            } catch (IOException e) {
+                AppLog.d(TAG, "Could not send 503: " + e.getMessage());
+            }
+        }
+        handler.close();
+    }
+}
@@ -0,0 +1,72 @@
+package com.tpn.adbautoenable;
+
+import android.os.SystemClock;
+
+import java.util.Locale;
+
+/**
+ * Admission control for one expensive endpoint: a token bucket refilled at {@code ratePerSecond}
+ * up to {@code burst} requests, plus a cap on requests inside the handler at the same time.
+ * Limits are per endpoint, not per client; these devices serve one dashboard or a handful.
+ */
+public class EndpointLimiter {
+    private final double ratePerSecond;
+    private final double burst;
+    private final int maxInFlight;
+
+    private double tokens;
+    private long refilledAt = SystemClock.elapsedRealtime();
+    private int inFlight = 0;
+    private long admitted = 0;
+    private long limited = 0;
+
+    /**
+     * @param ratePerSecond sustained rate; {@link Double#POSITIVE_INFINITY} disables the bucket
+     * @param maxInFlight   concurrent requests allowed; {@link Integer#MAX_VALUE} disables the cap
+     */
+    public EndpointLimiter(double ratePerSecond, int burst, int maxInFlight) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.maxInFlight = maxInFlight;
+        this.tokens = burst;
+    }
+
+    /**
+     * Admits a request or tells the caller how long to back off. An admitted request must be
+     * followed by exactly one {@link #release()}.
+     *
+     * @return 0 if admitted, otherwise the suggested Retry-After in whole seconds
+     */
+    public long tryAcquire() {
+        return tryAcquire(SystemClock.elapsedRealtime());
+    }
+
+    /** {@link #tryAcquire()} at elapsed-realtime {@code now}; lets tests drive the clock. */
+    synchronized long tryAcquire(long now) {
+        if (inFlight >= maxInFlight) {
+            limited++;
+            return 1;
+        }
+        if (!Double.isInfinite(ratePerSecond)) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerSecond / 1000.0);
+            refilledAt = now;
+            if (tokens < 1) {
+                limited++;
+                return Math.max(1, (long) Math.ceil((1 - tokens) / ratePerSecond));
+            }
+            tokens -= 1;
+        }
+        inFlight++;
+        admitted++;
+        return 0;
+    }
+
+    public synchronized void release() {
+        inFlight--;
+    }
+
+    public synchronized String toJson() {
+        return String.format(Locale.US, "{\"inFlight\":%d,\"maxInFlight\":%d,\"admitted\":%d,\"limited\":%d}",
+                inFlight, maxInFlight, admitted, limited);
+    }
+}
@@ -0,0 +1,297 @@
+package com.tpn.adbautoenable;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long operations (boot configuration, port switch) run as jobs on the {@link TaskExecutor}.
+ * Each job has an id that clients poll through /api/jobs/{id} for phase, progress, timings and
+ * result, and can cancel; listeners (/api/events) hear about every change. Starting a job type
+ * that is already queued or running returns that job.
+ * Finished jobs are kept in memory up to {@link #MAX_JOBS}, oldest evicted first.
+ */
+public class JobRegistry {
+    private static final String TAG = "ADBAutoEnable";
+    private static final int MAX_JOBS = 50;
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED
+    }
+
+    public interface JobBody {
+        /**
+         * Runs on the executor's worker. Should report progress through {@link Job#update} and
+         * stop early when interrupted.
+         *
+         * @return human-readable result
+         * @throws Exception with a message describing why the job failed
+         */
+        String run(Job job) throws Exception;
+    }
+
+    public interface Listener {
+        /** Called on the thread that changed the job, outside the job's lock; must not block. */
+        void onJobChanged(Job job);
+    }
+
+    public static final class Job {
+        public final String id;
+        public final String type;
+        private final long createdAt = SystemClock.elapsedRealtime();
+        private final long createdAtWallMs = System.currentTimeMillis();
+        private State state = State.QUEUED;
+        private String phase = "queued";
+        private int progress = 0;
+        private long startedAt = -1;
+        private long finishedAt = -1;
+        private String result;
+        private String error;
+        private boolean cancelRequested = false;
+        private Thread runner;
+        private final Listener listener;
+
+        Job(String id, String type, Listener listener) {
+            this.id = id;
+            this.type = type;
+            this.listener = listener;
+        }
+
+        /** Progress report from the job body; progress is a percentage. */
+        public void update(String phase, int progress) {
+            synchronized (this) {
+                this.phase = phase;
+                this.progress = Math.max(0, Math.min(100, progress));
+            }
+            listener.onJobChanged(this);
+        }
+
+        public synchronized boolean isCancelRequested() {
+            return cancelRequested;
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        public synchronized boolean isFinished() {
+            return state == State.SUCCEEDED || state == State.FAILED || state == State.CANCELLED;
+        }
+
+        /**
+         * Blocks until the job finishes or {@code timeoutMs} passes.
+         *
+         * @return true if the job finished
+         */
+        public synchronized boolean awaitFinish(long timeoutMs) throws InterruptedException {
+            long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+            while (!isFinished()) {
+                long remaining = deadline - SystemClock.elapsedRealtime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+
+        /** @return false if the job had already finished */
+        synchronized boolean cancel() {
+            if (isFinished()) {
+                return false;
+            }
+            cancelRequested = true;
+            if (runner != null) {
+                runner.interrupt();
+            }
+            return true;
+        }
+
+        boolean begin() {
+            synchronized (this) {
+                if (cancelRequested) {
+                    return false;
+                }
+                state = State.RUNNING;
+                startedAt = SystemClock.elapsedRealtime();
+                runner = Thread.currentThread();
+            }
+            listener.onJobChanged(this);
+            return true;
+        }
+
+        void finish(State finalState, String result, String error) {
+            synchronized (this) {
+                if (runner != null) {
+                    runner = null;
+                    // Don't leak a cancel interrupt into the worker's next task
+                    Thread.interrupted();
+                }
+                this.state = cancelRequested ? State.CANCELLED : finalState;
+                this.result = result;
+                this.error = error;
+                this.finishedAt = SystemClock.elapsedRealtime();
+                if (state == State.SUCCEEDED) {
+                    progress = 100;
+                }
+                notifyAll();
+            }
+            listener.onJobChanged(this);
+        }
+
+        public synchronized String toJson() {
+            long now = SystemClock.elapsedRealtime();
+            long queuedMs = (startedAt != -1 ? startedAt : (finishedAt != -1 ? finishedAt : now)) - createdAt;
+            long runningMs = startedAt == -1 ? 0 : (finishedAt != -1 ? finishedAt : now) - startedAt;
+            return String.format(Locale.US,
+                    "{\"id\":\"%s\",\"type\":\"%s\",\"state\":\"%s\",\"phase\":\"%s\",\"progress\":%d,\"createdAt\":%d,\"queuedMs\":%d,\"runningMs\":%d,\"result\":%s,\"error\":%s}",
+                    id, type, state, escape(phase), progress, createdAtWallMs, queuedMs, runningMs,
+                    quoteOrNull(result), quoteOrNull(error));
+        }
+    }
+
+    private final TaskExecutor taskExecutor;
+    private final Map<String, JobBody> definitions = new HashMap<>();
+    private final Map<String, Job> activeByType = new HashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Listener dispatcher = job -> {
+        for (Listener listener : listeners) {
+            listener.onJobChanged(job);
+        }
+    };
+    private final LinkedHashMap<String, Job> jobs = new LinkedHashMap<String, Job>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+            return size() > MAX_JOBS;
+        }
+    };
+
+    public JobRegistry(TaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Registers the body that {@link #start(String)} runs for {@code type}. */
+    public synchronized void define(String type, JobBody body) {
+        definitions.put(type, body);
+    }
+
+    /** Starts a job previously registered with {@link #define}, or returns null if there is none. */
+    public Job start(String type) {
+        JobBody body;
+        synchronized (this) {
+            body = definitions.get(type);
+        }
+        return body != null ? submit(type, body) : null;
+    }
+
+    /**
+     * Queues {@code body} as a new job of {@code type}, or returns the job of that type that is
+     * still queued or running.
+     */
+    public synchronized Job submit(String type, JobBody body) {
+        Job active = activeByType.get(type);
+        if (active != null && !active.isFinished()) {
+            AppLog.i(TAG, "Job " + active.id + " (" + type + ") already in flight, sharing it");
+            return active;
+        }
+
+        Job job = new Job(Long.toString(nextId.getAndIncrement()), type, dispatcher);
+        jobs.put(job.id, job);
+        activeByType.put(type, job);
+        dispatcher.onJobChanged(job);
+        taskExecutor.submit(type, () -> {
+            run(job, body);
+            return null;
+        }).whenComplete((ignored, failure) -> {
+            // Unfinished here means the body never ran: the queue was full, or the executor handed
+            // back an identical operation submitted outside the registry
+            if (!job.isFinished()) {
+                job.finish(State.FAILED, null, failure != null
+                        ? "Rejected: " + failure.getMessage()
+                        : "Superseded by an identical operation already running");
+            }
+            release(job);
+        });
+        return job;
+    }
+
+    public synchronized Job get(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * @return false if there is no such job or it already finished
+     */
+    public boolean cancel(String id) {
+        Job job = get(id);
+        if (job == null || !job.cancel()) {
+            return false;
+        }
+        AppLog.i(TAG, "Job " + id + " (" + job.type + ") cancel requested");
+        return true;
+    }
+
+    /** All retained jobs, newest first. */
+    public String toJson() {
+        List<Job> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(jobs.values());
+        }
+        StringBuilder json = new StringBuilder("[");
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            if (json.length() > 1) json.append(',');
+            json.append(snapshot.get(i).toJson());
+        }
+        return json.append(']').toString();
+    }
+
+    private void run(Job job, JobBody body) {
+        if (!job.begin()) {
+            job.finish(State.CANCELLED, null, "Cancelled before start");
+            return;
+        }
+        AppLog.i(TAG, "Job " + job.id + " (" + job.type + ") started");
+        try {
+            String result = body.run(job);
+            job.finish(State.SUCCEEDED, result, null);
+        } catch (InterruptedException e) {
+            job.finish(State.CANCELLED, null, "Interrupted");
+        } catch (Exception e) {
+            AppLog.e(TAG, "Job " + job.id + " (" + job.type + ") failed: " + e.getMessage());
+            job.finish(State.FAILED, null, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        AppLog.i(TAG, "Job " + job.id + " (" + job.type + ") finished: " + job.getState());
+    }
+
+    private synchronized void release(Job job) {
+        activeByType.remove(job.type, job);
+    }
+
+    private static String quoteOrNull(String value) {
+        return value == null ? "null" : "\"" + escape(value) + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", " ");
+    }
+}
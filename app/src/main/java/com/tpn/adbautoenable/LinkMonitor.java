@@ -0,0 +1,77 @@
+package com.tpn.adbautoenable;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Filters {@link NetworkUtils} snapshot updates down to real IPv4 address changes
+ * (DHCP renewal, Wi-Fi roam, reconnecting after the network was lost), ignoring transport and
+ * interface churn. Changes are debounced, so a flap reports one change from the address before
+ * it to the address it settled on.
+ */
+public class LinkMonitor {
+    private static final String TAG = "ADBAutoEnable";
+    private static final long DEBOUNCE_MS = 3000;
+
+    public interface Listener {
+        /**
+         * Called on the main thread when the device got a new address.
+         *
+         * @param oldIP previous address, or null if there was none
+         */
+        void onAddressChanged(String oldIP, String newIP);
+    }
+
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final NetworkUtils.SnapshotListener snapshotListener = this::onSnapshotChanged;
+    private final Runnable report = this::report;
+
+    // Main thread only: the last reported address, and the one the current debounce window will report
+    private String reportedIP;
+    private String pendingIP;
+    private boolean pending = false;
+
+    public LinkMonitor(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Requires {@link NetworkUtils#startTracking} to have been called. Must be called on the main thread. */
+    public void start() {
+        NetworkUtils.addSnapshotListener(snapshotListener);
+    }
+
+    /** Must be called on the main thread. */
+    public void stop() {
+        NetworkUtils.removeSnapshotListener(snapshotListener);
+        handler.removeCallbacks(report);
+        pending = false;
+    }
+
+    private void onSnapshotChanged(NetworkUtils.NetworkSnapshot previous, NetworkUtils.NetworkSnapshot current) {
+        String oldIP = previous != null ? previous.ip : null;
+        String newIP = current.ip;
+        if (newIP == null ? oldIP == null : newIP.equals(oldIP)) {
+            return;
+        }
+        AppLog.i(TAG, "Device address changed: " + oldIP + " -> " + newIP);
+        if (!pending) {
+            reportedIP = oldIP;
+            pending = true;
+        }
+        pendingIP = newIP;
+        handler.removeCallbacks(report);
+        handler.postDelayed(report, DEBOUNCE_MS);
+    }
+
+    private void report() {
+        pending = false;
+        String oldIP = reportedIP;
+        String newIP = pendingIP;
+        if (newIP == null || newIP.equals(oldIP)) {
+            // Lost the network, or came back on the same address
+            return;
+        }
+        listener.onAddressChanged(oldIP, newIP);
+    }
+}
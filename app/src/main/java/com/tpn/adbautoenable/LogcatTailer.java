@@ -0,0 +1,159 @@
+package com.tpn.adbautoenable;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * One {@code logcat adbd:V ADBAutoEnable:V *:S} reader shared by every web client.
+ * Lines go into an {@link SseRing}, so the reader never waits for a slow subscriber; logcat
+ * only runs while at least one stream is open.
+ * Seeing adbd's lines needs READ_LOGS (granted like WRITE_SECURE_SETTINGS); without it logcat
+ * only returns this app's own lines.
+ */
+public class LogcatTailer {
+    private static final String TAG = "ADBAutoEnable";
+    private static final int CAPACITY = 2048;
+    private static final int MAX_SUBSCRIBERS = 2;
+    private static final long MIN_RESTART_DELAY_MS = 1000;
+    private static final long MAX_RESTART_DELAY_MS = 30000;
+    private static final String[] COMMAND = {"logcat", "-v", "time", "adbd:V", "ADBAutoEnable:V", "*:S"};
+
+    private final SseRing ring = new SseRing(CAPACITY, MAX_SUBSCRIBERS);
+
+    // The thread that currently owns the logcat process; a replaced reader notices and exits
+    private volatile Thread reader;
+    private Process process;
+    // Wall-clock time the previous logcat process ended; a restart resumes there instead of replaying the buffer
+    private volatile long resumeAfterMs = 0;
+
+    /** Starts the logcat process unless it is already running. */
+    public synchronized void start() {
+        if (reader != null) {
+            return;
+        }
+        reader = new Thread(this::readLoop, "logcat-tailer");
+        reader.start();
+        AppLog.i(TAG, "Logcat tailer started");
+    }
+
+    /** Stops logcat and ends every open stream. */
+    public synchronized void stop() {
+        ring.close();
+        stopReader();
+    }
+
+    public int getSubscriberCount() {
+        return ring.getSubscriberCount();
+    }
+
+    /**
+     * Opens a Server-Sent Events stream of logcat lines, starting after {@code lastEventId}
+     * (0 for everything still buffered). Starts the tailer on first use; it stops again when the
+     * last stream closes.
+     *
+     * @return null if {@link #MAX_SUBSCRIBERS} clients are already attached
+     */
+    public InputStream subscribe(long lastEventId) {
+        // An id from before a web server restart is ahead of this ring; replay the buffer instead
+        InputStream stream = ring.subscribe(lastEventId > ring.getLastId() ? 0 : lastEventId, null);
+        if (stream == null) {
+            return null;
+        }
+        start();
+        return new FilterInputStream(stream) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                if (!closed) {
+                    closed = true;
+                    onUnsubscribed();
+                }
+            }
+        };
+    }
+
+    private synchronized void onUnsubscribed() {
+        if (ring.getSubscriberCount() == 0 && reader != null) {
+            AppLog.i(TAG, "Last logcat stream closed, stopping tailer");
+            stopReader();
+        }
+    }
+
+    private synchronized void stopReader() {
+        if (reader == null) {
+            return;
+        }
+        reader.interrupt();
+        reader = null;
+        if (process != null) {
+            process.destroy();
+            process = null;
+        }
+    }
+
+    private String[] command() {
+        if (resumeAfterMs == 0) {
+            return COMMAND;
+        }
+        String[] command = Arrays.copyOf(COMMAND, COMMAND.length + 2);
+        command[COMMAND.length] = "-T";
+        command[COMMAND.length + 1] = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US).format(new Date(resumeAfterMs));
+        return command;
+    }
+
+    private boolean isCurrentReader() {
+        return reader == Thread.currentThread();
+    }
+
+    private void readLoop() {
+        long restartDelay = MIN_RESTART_DELAY_MS;
+        while (isCurrentReader()) {
+            Process started = null;
+            try {
+                started = Runtime.getRuntime().exec(command());
+                synchronized (this) {
+                    if (!isCurrentReader()) {
+                        return;
+                    }
+                    process = started;
+                }
+                try (BufferedReader lines = new BufferedReader(
+                        new InputStreamReader(started.getInputStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = lines.readLine()) != null) {
+                        ring.publish(null, line);
+                        restartDelay = MIN_RESTART_DELAY_MS;
+                    }
+                }
+            } catch (IOException e) {
+                if (isCurrentReader()) {
+                    AppLog.w(TAG, "Logcat tailer read failed: " + e.getMessage());
+                }
+            } finally {
+                if (started != null) {
+                    started.destroy();
+                    resumeAfterMs = System.currentTimeMillis();
+                }
+            }
+            if (!isCurrentReader()) {
+                return;
+            }
+            try {
+                Thread.sleep(restartDelay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            restartDelay = Math.min(restartDelay * 2, MAX_RESTART_DELAY_MS);
+        }
+    }
+}
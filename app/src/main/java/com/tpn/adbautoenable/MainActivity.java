@@ -2,7 +2,6 @@ package com.tpn.adbautoenable;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.widget.LinearLayout;
 import android.widget.Switch;
@@ -11,15 +10,14 @@ import android.widget.TextView;
 public class MainActivity extends Activity {
 
     private static final int WEB_PORT = 9093;
-    private static final String PREFS_NAME = "ADBAutoEnablePrefs";
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
         // Read web server preference
-        SharedPreferences prefs = NetworkUtils.getDeviceProtectedPrefs(this, PREFS_NAME);
-        boolean webServerEnabled = prefs.getBoolean("web_server_enabled", true);
+        AppConfig config = AppConfig.get(this);
+        boolean webServerEnabled = config.isWebServerEnabled();
 
         // Start the foreground service to keep web server alive only if enabled
         if (webServerEnabled) {
@@ -54,7 +52,7 @@ public class MainActivity extends Activity {
         webServerSwitch.setPadding(0, 30, 0, 10);
 
         webServerSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            prefs.edit().putBoolean("web_server_enabled", isChecked).apply();
+            config.setWebServerEnabled(isChecked);
 
             if (isChecked) {
                 Intent serviceIntent = new Intent(this, AdbConfigService.class);
@@ -0,0 +1,132 @@
+package com.tpn.adbautoenable;
+
+import android.content.Context;
+import android.net.nsd.NsdManager;
+import android.net.nsd.NsdServiceInfo;
+import android.os.SystemClock;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One-shot mDNS lookup of this device's adbd, shared by the configuration pipeline and the
+ * web server. Returns as soon as adbd on {@code deviceIP} resolves; the timeout only applies
+ * when nothing answers.
+ */
+public final class MdnsDiscovery {
+    private static final String TAG = "ADBAutoEnable";
+    private static final String SERVICE_TYPE = "_adb-tls-connect._tcp";
+    public static final long DEFAULT_TIMEOUT_MS = 10000;
+
+    private MdnsDiscovery() {
+    }
+
+    /** @return the port adbd announced for {@code deviceIP}, or -1 if none resolved in time */
+    @SuppressWarnings("deprecation")
+    public static int findAdbPort(Context context, String deviceIP, long timeoutMs) {
+        final int[] discoveredPort = {-1};
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long startedAt = SystemClock.elapsedRealtime();
+        AppLog.i(TAG, "Looking for mDNS service on device IP: " + deviceIP);
+
+        NsdManager nsdManager = (NsdManager) context.getSystemService(Context.NSD_SERVICE);
+        if (nsdManager == null) {
+            AppLog.e(TAG, "NsdManager not available");
+            Metrics.MDNS_DISCOVERIES.get("not_found").inc();
+            return -1;
+        }
+
+        NsdManager.DiscoveryListener discoveryListener = new NsdManager.DiscoveryListener() {
+            @Override
+            public void onDiscoveryStarted(String serviceType) {
+                AppLog.i(TAG, "mDNS discovery started for " + serviceType);
+            }
+
+            @Override
+            public void onServiceFound(NsdServiceInfo serviceInfo) {
+                AppLog.i(TAG, "Service found: " + serviceInfo.getServiceName());
+                nsdManager.resolveService(serviceInfo, new NsdManager.ResolveListener() {
+                    @Override
+                    public void onResolveFailed(NsdServiceInfo serviceInfo, int errorCode) {
+                        AppLog.e(TAG, "Resolve failed: " + errorCode);
+                    }
+
+                    @Override
+                    public void onServiceResolved(NsdServiceInfo serviceInfo) {
+                        InetAddress hostAddress = serviceInfo.getHost();
+                        String host = hostAddress != null ? hostAddress.getHostAddress() : null;
+                        if (host == null) {
+                            AppLog.w(TAG, "Host address is null");
+                            return;
+                        }
+
+                        int port = serviceInfo.getPort();
+                        AppLog.i(TAG, "Host: " + host + ", Port: " + port);
+                        if (!host.equals(deviceIP)) {
+                            AppLog.w(TAG, "Skipping device with IP " + host + " (looking for " + deviceIP + ")");
+                            return;
+                        }
+                        synchronized (discoveredPort) {
+                            if (discoveredPort[0] != -1) {
+                                return;
+                            }
+                            AppLog.i(TAG, "Found matching device with IP: " + deviceIP + ", Port: " + port);
+                            Metrics.MDNS_RESOLVE.observeMs(SystemClock.elapsedRealtime() - startedAt);
+                            discoveredPort[0] = port;
+                        }
+                        latch.countDown();
+                    }
+                });
+            }
+
+            @Override
+            public void onServiceLost(NsdServiceInfo serviceInfo) {
+                AppLog.i(TAG, "Service lost: " + serviceInfo.getServiceName());
+            }
+
+            @Override
+            public void onDiscoveryStopped(String serviceType) {
+                AppLog.i(TAG, "Discovery stopped: " + serviceType);
+            }
+
+            @Override
+            public void onStartDiscoveryFailed(String serviceType, int errorCode) {
+                AppLog.e(TAG, "Discovery start failed: error " + errorCode);
+                latch.countDown();
+            }
+
+            @Override
+            public void onStopDiscoveryFailed(String serviceType, int errorCode) {
+                AppLog.e(TAG, "Discovery stop failed: error " + errorCode);
+            }
+        };
+
+        try {
+            nsdManager.discoverServices(SERVICE_TYPE, NsdManager.PROTOCOL_DNS_SD, discoveryListener);
+            if (!latch.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                AppLog.i(TAG, "mDNS discovery timed out after " + timeoutMs + "ms");
+            }
+            try {
+                nsdManager.stopServiceDiscovery(discoveryListener);
+            } catch (Exception e) {
+                AppLog.e(TAG, "Error stopping discovery", e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            try {
+                nsdManager.stopServiceDiscovery(discoveryListener);
+            } catch (Exception ignored) {
+            }
+        } catch (Exception e) {
+            AppLog.e(TAG, "mDNS discovery error", e);
+        }
+
+        int port;
+        synchronized (discoveredPort) {
+            port = discoveredPort[0];
+        }
+        Metrics.MDNS_DISCOVERIES.get(port != -1 ? "found" : "not_found").inc();
+        return port;
+    }
+}
@@ -0,0 +1,263 @@
+package com.tpn.adbautoenable;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide counters, histograms and gauges, served in Prometheus text format by /metrics.
+ * Recording is allocation-free: counters and histogram buckets are atomics created up front,
+ * and labelled series are picked from a fixed set of label values. Gauges are sampled only
+ * when scraped.
+ */
+public final class Metrics {
+    private static final long[] FAST_BUCKETS_MS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000};
+    private static final long[] SLOW_BUCKETS_MS = {100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000, 300000};
+    // Appended to every labelled family so unknown label values never land in a real series
+    private static final String OTHER = "other";
+
+    public static final class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void inc() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+    }
+
+    /** Durations in milliseconds, exported in seconds. */
+    public static final class Histogram {
+        private final long[] boundsMs;
+        // One slot per bound plus +Inf; not cumulative until rendered
+        private final AtomicLongArray buckets;
+        private final AtomicLong sumMs = new AtomicLong();
+
+        Histogram(long[] boundsMs) {
+            this.boundsMs = boundsMs;
+            this.buckets = new AtomicLongArray(boundsMs.length + 1);
+        }
+
+        public void observeMs(long ms) {
+            int i = 0;
+            while (i < boundsMs.length && ms > boundsMs[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+            sumMs.addAndGet(ms);
+        }
+    }
+
+    public interface Gauge {
+        double value();
+    }
+
+    /** One metric name with either a single unlabelled series or one series per label value. */
+    public static final class Family<T> {
+        final String name;
+        final String help;
+        final String type;
+        final String label;
+        final String[] labelValues;
+        final Object[] series;
+
+        Family(String name, String help, String type, String label, String[] labelValues, Object[] series) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.label = label;
+            this.labelValues = labelValues;
+            this.series = series;
+        }
+
+        /** The series for {@code labelValue}; unknown values go to the "other" series. */
+        @SuppressWarnings("unchecked")
+        public T get(String labelValue) {
+            for (int i = 0; i < labelValues.length; i++) {
+                if (labelValues[i].equals(labelValue)) {
+                    return (T) series[i];
+                }
+            }
+            return (T) series[series.length - 1];
+        }
+    }
+
+    private static final Map<String, Family<?>> families = new LinkedHashMap<>();
+    private static final Map<String, Gauge> gauges = new LinkedHashMap<>();
+    private static final Map<String, String[]> gaugeInfo = new LinkedHashMap<>();
+
+    public static final Histogram MDNS_RESOLVE = histogram("adbautoenable_mdns_resolve_seconds",
+            "Time from starting mDNS discovery to resolving adbd on this device", SLOW_BUCKETS_MS);
+    public static final Family<Counter> MDNS_DISCOVERIES = counters("adbautoenable_mdns_discoveries_total",
+            "mDNS discovery runs by result", "result", "found", "not_found");
+    public static final Histogram PORT_SCAN = histogram("adbautoenable_port_scan_seconds",
+            "Duration of the fallback ephemeral port scan", SLOW_BUCKETS_MS);
+    public static final Counter PORTS_PROBED = counter("adbautoenable_port_scan_ports_probed_total",
+            "Ports TCP-probed by the fallback port scan");
+    public static final Family<Histogram> HANDSHAKE = histograms("adbautoenable_adb_handshake_seconds",
+            "ADB handshake latency; connect is the full TLS/auth handshake, fingerprint the raw CNXN probe",
+            FAST_BUCKETS_MS, "kind", "connect", "fingerprint");
+    public static final Family<Counter> HANDSHAKES = counters("adbautoenable_adb_handshakes_total",
+            "ADB handshakes by kind and result", "outcome", "connect_ok", "connect_failed", "fingerprint_ok", "fingerprint_failed");
+    public static final Histogram SWITCH = histogram("adbautoenable_switch_seconds",
+            "switchToPort latency: connect, tcpip command and adbd restart wait", SLOW_BUCKETS_MS);
+    public static final Family<Counter> SWITCHES = counters("adbautoenable_switches_total",
+            "switchToPort calls by result", "result", "ok", "failed");
+    public static final Family<Counter> WATCHDOG_CHECKS = counters("adbautoenable_watchdog_checks_total",
+            "Watchdog fingerprint checks of the target port by result; lost starts a recovery", "result",
+            "answering", "lost");
+    public static final Family<Counter> KEEPALIVE_SESSIONS = counters("adbautoenable_keepalive_sessions_total",
+            "Keepalive sessions opened, and dropped by adbd", "event", "opened", "dropped");
+    public static final Family<Counter> SETTINGS_CHANGES = counters("adbautoenable_adb_setting_changes_total",
+            "Changes to adb_wifi_enabled / adb_allowed_connection_time seen by the settings guard, by what it did",
+            "result", "as_wanted", "reasserted", "write_denied");
+    public static final Histogram BOOT_JOB = histogram("adbautoenable_boot_job_seconds",
+            "Duration of boot configuration jobs", SLOW_BUCKETS_MS);
+    public static final Family<Counter> CONFIG_ATTEMPTS = counters("adbautoenable_config_attempts_total",
+            "Configuration pipeline attempts by outcome", "outcome",
+            "fast_path", "found", "success", "not_found", "switch_failed", "port_gone", "permission_denied");
+    public static final Counter CONFIG_RETRIES = counter("adbautoenable_config_retries_total",
+            "Configuration attempts retried after a backoff delay");
+    public static final Family<Histogram> HTTP_REQUEST = histograms("adbautoenable_http_request_seconds",
+            "Time to produce a response, per endpoint (streams count until headers are ready)", FAST_BUCKETS_MS,
+            "endpoint", "/", "/api/status", "/api/events", "/api/logs", "/api/logcat/stream", "/api/switch",
+            "/api/test", "/api/pair", "/api/batch", "/api/jobs", "/api/port", "/api/retry", "/api/server",
+            "/api/reset", "/api/webserver", "/api/watchdog", "/api/keepalive", "/metrics");
+    public static final Counter HTTP_LIMITED = counter("adbautoenable_http_limited_total",
+            "Requests answered with 429 by an endpoint limiter");
+
+    // Uptime at which the last boot job got ADB onto the target port; -1 until then
+    private static final AtomicLong bootTimeToAdbMs = new AtomicLong(-1);
+
+    static {
+        gauge("adbautoenable_boot_time_to_adb_seconds", "Uptime at which the last boot configuration reached ADB on the target port",
+                "gauge", () -> bootTimeToAdbMs.get() < 0 ? Double.NaN : bootTimeToAdbMs.get() / 1000.0);
+        gauge("adbautoenable_threads", "Live threads in the app process", "gauge", Thread::activeCount);
+    }
+
+    private Metrics() {
+    }
+
+    public static void setBootTimeToAdbMs(long uptimeMs) {
+        bootTimeToAdbMs.set(uptimeMs);
+    }
+
+    /**
+     * Registers or replaces a gauge sampled at scrape time.
+     *
+     * @param name may include a label set, e.g. {@code adbautoenable_sse_subscribers{stream="events"}}
+     * @param type "gauge" or "counter"
+     */
+    public static synchronized void gauge(String name, String help, String type, Gauge gauge) {
+        gauges.put(name, gauge);
+        gaugeInfo.put(name, new String[]{help, type});
+    }
+
+    public static synchronized void removeGauge(String name) {
+        gauges.remove(name);
+        gaugeInfo.remove(name);
+    }
+
+    public static synchronized String render() {
+        StringBuilder out = new StringBuilder(8192);
+        for (Family<?> family : families.values()) {
+            header(out, family.name, family.help, family.type);
+            for (int i = 0; i < family.series.length; i++) {
+                String labels = family.label == null ? "" : family.label + "=\"" + family.labelValues[i] + "\"";
+                Object series = family.series[i];
+                if (series instanceof Counter) {
+                    sample(out, family.name, labels, ((Counter) series).value.get());
+                } else {
+                    renderHistogram(out, family.name, labels, (Histogram) series);
+                }
+            }
+        }
+
+        String lastBase = null;
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            String name = entry.getKey();
+            int brace = name.indexOf('{');
+            String base = brace == -1 ? name : name.substring(0, brace);
+            if (!base.equals(lastBase)) {
+                String[] info = gaugeInfo.get(name);
+                header(out, base, info[0], info[1]);
+                lastBase = base;
+            }
+            double value = entry.getValue().value();
+            out.append(name).append(' ').append(Double.isNaN(value) ? "NaN" : formatDouble(value)).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static Counter counter(String name, String help) {
+        return (Counter) register(name, help, "counter", null, new String[]{""}, new Object[]{new Counter()}).series[0];
+    }
+
+    private static Family<Counter> counters(String name, String help, String label, String... values) {
+        String[] labelValues = withOther(values);
+        Object[] series = new Object[labelValues.length];
+        for (int i = 0; i < labelValues.length; i++) series[i] = new Counter();
+        return register(name, help, "counter", label, labelValues, series);
+    }
+
+    private static Histogram histogram(String name, String help, long[] boundsMs) {
+        return (Histogram) register(name, help, "histogram", null, new String[]{""},
+                new Object[]{new Histogram(boundsMs)}).series[0];
+    }
+
+    private static Family<Histogram> histograms(String name, String help, long[] boundsMs, String label, String... values) {
+        String[] labelValues = withOther(values);
+        Object[] series = new Object[labelValues.length];
+        for (int i = 0; i < labelValues.length; i++) series[i] = new Histogram(boundsMs);
+        return register(name, help, "histogram", label, labelValues, series);
+    }
+
+    private static String[] withOther(String[] values) {
+        String[] labelValues = Arrays.copyOf(values, values.length + 1);
+        labelValues[values.length] = OTHER;
+        return labelValues;
+    }
+
+    private static synchronized <T> Family<T> register(String name, String help, String type, String label,
+                                                       String[] labelValues, Object[] series) {
+        Family<T> family = new Family<>(name, help, type, label, labelValues, series);
+        families.put(name, family);
+        return family;
+    }
+
+    private static void renderHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int b = 0; b < histogram.boundsMs.length; b++) {
+            cumulative += histogram.buckets.get(b);
+            sample(out, name + "_bucket", prefix + "le=\"" + formatDouble(histogram.boundsMs[b] / 1000.0) + "\"", cumulative);
+        }
+        cumulative += histogram.buckets.get(histogram.boundsMs.length);
+        sample(out, name + "_bucket", prefix + "le=\"+Inf\"", cumulative);
+        out.append(name).append("_sum");
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ').append(formatDouble(histogram.sumMs.get() / 1000.0)).append('\n');
+        sample(out, name + "_count", labels, cumulative);
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String formatDouble(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value)
+                : Double.toString(value);
+    }
+}
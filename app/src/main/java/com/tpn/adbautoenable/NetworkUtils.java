@@ -7,55 +7,167 @@ import android.net.LinkAddress;
 import android.net.LinkProperties;
 import android.net.Network;
 import android.net.NetworkCapabilities;
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class NetworkUtils {
     private static final String TAG = "ADBAutoEnable";
 
+    /**
+     * Immutable view of the default network. While tracking is active it is rebuilt by the
+     * network callback and published through a volatile field, so readers never touch binder.
+     */
+    public static final class NetworkSnapshot {
+        /** IPv4 address, or null if there is none. */
+        public final String ip;
+        /** "wifi", "ethernet", "vpn", "cellular", "other" or "none". */
+        public final String transport;
+        /** Names of the interfaces that are up, loopback excluded. */
+        public final List<String> interfaces;
+        /** Wi-Fi, Ethernet or VPN with internet capability (raw cellular does not count). */
+        public final boolean connected;
+        /** SystemClock.elapsedRealtime() when the snapshot was taken. */
+        public final long takenAt;
+
+        NetworkSnapshot(String ip, String transport, List<String> interfaces, boolean connected) {
+            this.ip = ip;
+            this.transport = transport;
+            this.interfaces = Collections.unmodifiableList(new ArrayList<>(interfaces));
+            this.connected = connected;
+            this.takenAt = SystemClock.elapsedRealtime();
+        }
+
+        boolean sameAs(NetworkSnapshot other) {
+            return other != null
+                    && (ip == null ? other.ip == null : ip.equals(other.ip))
+                    && transport.equals(other.transport)
+                    && interfaces.equals(other.interfaces)
+                    && connected == other.connected;
+        }
+
+        @Override
+        public String toString() {
+            return "ip=" + ip + ", transport=" + transport + ", connected=" + connected + ", interfaces=" + interfaces;
+        }
+    }
+
+    public interface SnapshotListener {
+        /** Called on the main thread after a snapshot that differs from the previous one was published. */
+        void onSnapshotChanged(NetworkSnapshot previous, NetworkSnapshot current);
+    }
+
+    private static final CopyOnWriteArrayList<SnapshotListener> listeners = new CopyOnWriteArrayList<>();
+    private static volatile NetworkSnapshot snapshot;
+    private static volatile ConnectivityManager.NetworkCallback trackingCallback;
+
+    // Callback state; only touched on the main thread
+    private static NetworkCapabilities trackedCapabilities;
+    private static LinkProperties trackedLinkProperties;
+
+    /**
+     * Starts maintaining the snapshot from a default-network callback. Until this is called
+     * (e.g. in MainActivity), the getters below query ConnectivityManager directly.
+     */
+    public static synchronized void startTracking(Context context) {
+        if (trackingCallback != null) {
+            return;
+        }
+        ConnectivityManager cm = (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            AppLog.e(TAG, "ConnectivityManager not available, network snapshot disabled");
+            return;
+        }
+
+        snapshot = querySnapshot(context);
+        trackingCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                trackedCapabilities = capabilities;
+                publish(buildSnapshot(trackedCapabilities, trackedLinkProperties));
+            }
+
+            @Override
+            public void onLinkPropertiesChanged(Network network, LinkProperties linkProperties) {
+                trackedLinkProperties = linkProperties;
+                publish(buildSnapshot(trackedCapabilities, trackedLinkProperties));
+            }
+
+            @Override
+            public void onLost(Network network) {
+                trackedCapabilities = null;
+                trackedLinkProperties = null;
+                // No fallback address here: an interface can keep its IP for a while after the network is gone
+                publish(new NetworkSnapshot(null, transportOf(null), new ArrayList<>(), false));
+            }
+        };
+        cm.registerDefaultNetworkCallback(trackingCallback, new Handler(Looper.getMainLooper()));
+        AppLog.i(TAG, "Network snapshot tracking started: " + snapshot);
+    }
+
+    public static synchronized void stopTracking(Context context) {
+        if (trackingCallback == null) {
+            return;
+        }
+        ConnectivityManager cm = (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm != null) {
+            try {
+                cm.unregisterNetworkCallback(trackingCallback);
+            } catch (IllegalArgumentException e) {
+                AppLog.w(TAG, "Network snapshot callback was not registered", e);
+            }
+        }
+        trackingCallback = null;
+        snapshot = null;
+    }
+
+    public static void addSnapshotListener(SnapshotListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public static void removeSnapshotListener(SnapshotListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Current snapshot; the cached one while tracking, otherwise freshly queried.
+     */
+    public static NetworkSnapshot getSnapshot(Context context) {
+        NetworkSnapshot current = snapshot;
+        return current != null ? current : querySnapshot(context);
+    }
+
     /**
      * Gets the live IPv4 address of the active network interface.
      * Safe for API level 21+.
      */
     public static String getLiveDeviceIP(Context context) {
-        try {
-            ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-            if (cm != null) {
-                Network activeNetwork = cm.getActiveNetwork();
-                if (activeNetwork != null) {
-                    LinkProperties linkProperties = cm.getLinkProperties(activeNetwork);
-                    if (linkProperties != null) {
-                        for (LinkAddress linkAddress : linkProperties.getLinkAddresses()) {
-                            InetAddress address = linkAddress.getAddress();
-                            if (address instanceof Inet4Address && !address.isLoopbackAddress()) {
-                                return address.getHostAddress();
-                            }
-                        }
-                    }
-                }
-            }
-
-            // NetworkInterface enumeration fallback
-            List<NetworkInterface> networkInterfaces = Collections.list(NetworkInterface.getNetworkInterfaces());
-            for (NetworkInterface networkInterface : networkInterfaces) {
-                if (!networkInterface.isUp() || networkInterface.isLoopback()) continue;
+        String ip = getSnapshot(context).ip;
+        return ip != null ? ip : "127.0.0.1";
+    }
 
-                List<InetAddress> addresses = Collections.list(networkInterface.getInetAddresses());
-                for (InetAddress address : addresses) {
-                    if (address instanceof Inet4Address && !address.isLoopbackAddress()) {
-                        return address.getHostAddress();
-                    }
-                }
+    /**
+     * First non-loopback IPv4 address of a link, or null if it has none.
+     */
+    public static String getIPv4Address(LinkProperties linkProperties) {
+        if (linkProperties == null) {
+            return null;
+        }
+        for (LinkAddress linkAddress : linkProperties.getLinkAddresses()) {
+            InetAddress address = linkAddress.getAddress();
+            if (address instanceof Inet4Address && !address.isLoopbackAddress()) {
+                return address.getHostAddress();
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to resolve live IP address", e);
         }
-        return "127.0.0.1";
+        return null;
     }
 
     /**
@@ -64,29 +176,82 @@ public class NetworkUtils {
      * Safe for API level 21+.
      */
     public static boolean isNetworkConnected(Context context) {
-        try {
-            ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-            if (cm == null) return false;
-
-            Network network = cm.getActiveNetwork();
-            if (network != null) {
-                NetworkCapabilities capabilities = cm.getNetworkCapabilities(network);
-                return capabilities != null &&
-                        (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI) ||
-                                capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET) ||
-                                capabilities.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) &&
-                        capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
-            }
-            return false;
-        } catch (Exception e) {
-            Log.e(TAG, "Error checking network status", e);
-            return false;
-        }
+        return getSnapshot(context).connected;
     }
+
     public static SharedPreferences getDeviceProtectedPrefs(Context context, String prefsName) {
         Context storageContext = context.isDeviceProtectedStorage()
                 ? context
                 : context.createDeviceProtectedStorageContext();
         return storageContext.getSharedPreferences(prefsName, Context.MODE_PRIVATE);
     }
-}
\ No newline at end of file
+
+    private static void publish(NetworkSnapshot next) {
+        NetworkSnapshot previous = snapshot;
+        if (next.sameAs(previous) || trackingCallback == null) {
+            return;
+        }
+        snapshot = next;
+        AppLog.d(TAG, "Network snapshot updated: " + next);
+        for (SnapshotListener listener : listeners) {
+            listener.onSnapshotChanged(previous, next);
+        }
+    }
+
+    /** Slow path used before tracking starts: one round of binder calls. */
+    private static NetworkSnapshot querySnapshot(Context context) {
+        NetworkCapabilities capabilities = null;
+        LinkProperties linkProperties = null;
+        try {
+            ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (cm != null) {
+                Network activeNetwork = cm.getActiveNetwork();
+                if (activeNetwork != null) {
+                    capabilities = cm.getNetworkCapabilities(activeNetwork);
+                    linkProperties = cm.getLinkProperties(activeNetwork);
+                }
+            }
+        } catch (Exception e) {
+            AppLog.e(TAG, "Error querying active network", e);
+        }
+        return buildSnapshot(capabilities, linkProperties);
+    }
+
+    private static NetworkSnapshot buildSnapshot(NetworkCapabilities capabilities, LinkProperties linkProperties) {
+        List<String> interfaces = new ArrayList<>();
+        String fallbackIP = null;
+        try {
+            // NetworkInterface enumeration also covers links ConnectivityManager doesn't report an IPv4 for
+            for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!networkInterface.isUp() || networkInterface.isLoopback()) continue;
+                interfaces.add(networkInterface.getName());
+                if (fallbackIP != null) continue;
+                for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+                    if (address instanceof Inet4Address && !address.isLoopbackAddress()) {
+                        fallbackIP = address.getHostAddress();
+                        break;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            AppLog.e(TAG, "Failed to enumerate network interfaces", e);
+        }
+
+        String ip = getIPv4Address(linkProperties);
+        boolean connected = capabilities != null &&
+                (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI) ||
+                        capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET) ||
+                        capabilities.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) &&
+                capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        return new NetworkSnapshot(ip != null ? ip : fallbackIP, transportOf(capabilities), interfaces, connected);
+    }
+
+    private static String transportOf(NetworkCapabilities capabilities) {
+        if (capabilities == null) return "none";
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) return "vpn";
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) return "wifi";
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) return "ethernet";
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) return "cellular";
+        return "other";
+    }
+}
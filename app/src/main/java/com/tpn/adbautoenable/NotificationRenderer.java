@@ -0,0 +1,109 @@
+package com.tpn.adbautoenable;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Posts the service's foreground notification. Every notify() is a binder call and a SystemUI
+ * redraw, which weak TV hardware feels, so updates with unchanged content are dropped and the
+ * rest are spaced at least {@link #MIN_INTERVAL_MS} apart (the latest pending update wins).
+ * Waits show a progress bar instead of countdown text.
+ */
+public class NotificationRenderer {
+    private static final String TAG = "ADBAutoEnable";
+    private static final long MIN_INTERVAL_MS = 1000;
+
+    public static final int PROGRESS_NONE = -1;
+    public static final int PROGRESS_INDETERMINATE = -2;
+
+    private final Context context;
+    private final int notificationId;
+    private final Notification.Builder builder;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flush = this::flush;
+
+    // Guarded by this
+    private String renderedText;
+    private int renderedProgress = PROGRESS_NONE;
+    private String pendingText;
+    private int pendingProgress;
+    private boolean flushScheduled = false;
+    private long lastNotifyAt = 0;
+
+    public NotificationRenderer(Context context, String channelId, int notificationId) {
+        this.context = context;
+        this.notificationId = notificationId;
+        this.builder = new Notification.Builder(context, channelId)
+                .setContentTitle("ADB Auto-Enable")
+                .setSmallIcon(android.R.drawable.ic_menu_preferences)
+                .setOnlyAlertOnce(true);
+    }
+
+    /** Builds the notification for startForeground() and records it as rendered. */
+    public synchronized Notification build(String text) {
+        renderedText = text;
+        renderedProgress = PROGRESS_NONE;
+        lastNotifyAt = SystemClock.elapsedRealtime();
+        return apply(text, PROGRESS_NONE).build();
+    }
+
+    public void render(String text) {
+        render(text, PROGRESS_NONE);
+    }
+
+    /**
+     * @param progress 0-100, {@link #PROGRESS_INDETERMINATE} or {@link #PROGRESS_NONE}
+     */
+    public synchronized void render(String text, int progress) {
+        pendingText = text;
+        pendingProgress = progress;
+        if (flushScheduled) {
+            return;
+        }
+        long wait = lastNotifyAt + MIN_INTERVAL_MS - SystemClock.elapsedRealtime();
+        flushScheduled = true;
+        if (wait <= 0) {
+            handler.post(flush);
+        } else {
+            handler.postDelayed(flush, wait);
+        }
+    }
+
+    private void flush() {
+        Notification notification;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pendingText == null || (pendingText.equals(renderedText) && pendingProgress == renderedProgress)) {
+                return;
+            }
+            renderedText = pendingText;
+            renderedProgress = pendingProgress;
+            lastNotifyAt = SystemClock.elapsedRealtime();
+            notification = apply(renderedText, renderedProgress).build();
+        }
+        try {
+            NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+            if (manager != null) {
+                manager.notify(notificationId, notification);
+            }
+        } catch (Exception e) {
+            AppLog.e(TAG, "Error updating notification", e);
+        }
+    }
+
+    private Notification.Builder apply(String text, int progress) {
+        builder.setContentText(text);
+        if (progress == PROGRESS_NONE) {
+            builder.setProgress(0, 0, false);
+        } else if (progress == PROGRESS_INDETERMINATE) {
+            builder.setProgress(0, 0, true);
+        } else {
+            builder.setProgress(100, progress, false);
+        }
+        return builder;
+    }
+}
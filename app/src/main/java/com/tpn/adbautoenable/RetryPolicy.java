@@ -0,0 +1,102 @@
+package com.tpn.adbautoenable;
+
+import android.content.SharedPreferences;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Tunable retry settings for the configuration pipeline, persisted in prefs and editable via /api/retry.
+ * Delays grow exponentially from {@link #baseDelayMs} up to {@link #maxDelayMs}; up to {@link #jitter}
+ * of each delay is randomized away so a fleet rebooting together doesn't retry in lockstep.
+ */
+public class RetryPolicy {
+    static final String KEY_MAX_ATTEMPTS = "retry_max_attempts";
+    static final String KEY_BASE_DELAY_MS = "retry_base_delay_ms";
+    static final String KEY_MAX_DELAY_MS = "retry_max_delay_ms";
+    static final String KEY_JITTER = "retry_jitter";
+    static final String KEY_TOTAL_BUDGET_MS = "retry_total_budget_ms";
+    static final String KEY_SWITCH_BUDGET_MS = "retry_switch_budget_ms";
+    static final String KEY_SCAN_BUDGET_MS = "retry_scan_budget_ms";
+
+    /** Attempts allowed per phase (discovery and switch each get their own count). */
+    public final int maxAttempts;
+    public final long baseDelayMs;
+    public final long maxDelayMs;
+    /** Fraction (0-1) of each delay that is randomized. */
+    public final float jitter;
+    /** Upper bound for the whole retry loop, delays included. */
+    public final long totalBudgetMs;
+    /** Deadline handed to each switchToPort call. */
+    public final long switchBudgetMs;
+    /** How long the fallback port scan may run. */
+    public final long scanBudgetMs;
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, float jitter,
+                       long totalBudgetMs, long switchBudgetMs, long scanBudgetMs) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.jitter = jitter;
+        this.totalBudgetMs = totalBudgetMs;
+        this.switchBudgetMs = switchBudgetMs;
+        this.scanBudgetMs = scanBudgetMs;
+    }
+
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(3, 2000, 30000, 0.5f, 120000, AdbHelper.DEFAULT_SWITCH_BUDGET_MS, 15000);
+    }
+
+    public static RetryPolicy load(SharedPreferences prefs) {
+        RetryPolicy d = defaults();
+        return new RetryPolicy(
+                prefs.getInt(KEY_MAX_ATTEMPTS, d.maxAttempts),
+                prefs.getLong(KEY_BASE_DELAY_MS, d.baseDelayMs),
+                prefs.getLong(KEY_MAX_DELAY_MS, d.maxDelayMs),
+                prefs.getFloat(KEY_JITTER, d.jitter),
+                prefs.getLong(KEY_TOTAL_BUDGET_MS, d.totalBudgetMs),
+                prefs.getLong(KEY_SWITCH_BUDGET_MS, d.switchBudgetMs),
+                prefs.getLong(KEY_SCAN_BUDGET_MS, d.scanBudgetMs));
+    }
+
+    public void save(SharedPreferences prefs) {
+        prefs.edit()
+                .putInt(KEY_MAX_ATTEMPTS, maxAttempts)
+                .putLong(KEY_BASE_DELAY_MS, baseDelayMs)
+                .putLong(KEY_MAX_DELAY_MS, maxDelayMs)
+                .putFloat(KEY_JITTER, jitter)
+                .putLong(KEY_TOTAL_BUDGET_MS, totalBudgetMs)
+                .putLong(KEY_SWITCH_BUDGET_MS, switchBudgetMs)
+                .putLong(KEY_SCAN_BUDGET_MS, scanBudgetMs)
+                .apply();
+    }
+
+    /**
+     * @return null if the policy is usable, otherwise a message describing the invalid field
+     */
+    public String validate() {
+        if (maxAttempts < 1 || maxAttempts > 20) return "maxAttempts must be 1-20";
+        if (baseDelayMs < 0 || baseDelayMs > maxDelayMs) return "baseDelayMs must be between 0 and maxDelayMs";
+        if (maxDelayMs > 600000) return "maxDelayMs must be at most 600000";
+        if (Float.isNaN(jitter) || Float.isInfinite(jitter) || jitter < 0f || jitter > 1f) return "jitter must be 0-1";
+        if (totalBudgetMs < 1000 || totalBudgetMs > 3600000) return "totalBudgetMs must be 1000-3600000";
+        if (switchBudgetMs < 1000 || switchBudgetMs > 120000) return "switchBudgetMs must be 1000-120000";
+        if (scanBudgetMs < 1000 || scanBudgetMs > 120000) return "scanBudgetMs must be 1000-120000";
+        return null;
+    }
+
+    /**
+     * Delay before retrying a phase that has failed {@code failures} times (1-based).
+     */
+    public long delayMs(int failures, Random random) {
+        double exponential = baseDelayMs * Math.pow(2, Math.max(0, failures - 1));
+        long capped = (long) Math.min(exponential, maxDelayMs);
+        return capped - (long) (capped * jitter * random.nextDouble());
+    }
+
+    public String toJson() {
+        return String.format(Locale.US,
+                "{\"maxAttempts\":%d,\"baseDelayMs\":%d,\"maxDelayMs\":%d,\"jitter\":%.2f,\"totalBudgetMs\":%d,\"switchBudgetMs\":%d,\"scanBudgetMs\":%d}",
+                maxAttempts, baseDelayMs, maxDelayMs, jitter, totalBudgetMs, switchBudgetMs, scanBudgetMs);
+    }
+}
@@ -0,0 +1,273 @@
+package com.tpn.adbautoenable;
+
+import android.content.Context;
+import android.net.nsd.NsdManager;
+import android.net.nsd.NsdServiceInfo;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks for adbd while the boot sequence is still waiting for the system to settle.
+ * Started as soon as the network is up; runs an mDNS watch plus cheap periodic probes of
+ * the last known port and of listening sockets from /proc/net. Results are only read by
+ * {@link BootStateMachine} once its stabilization gate opens.
+ */
+public class SpeculativeDiscovery {
+    private static final String TAG = "ADBAutoEnable";
+    private static final String SERVICE_TYPE = "_adb-tls-connect._tcp";
+    private static final long PROBE_INTERVAL_MS = 2000;
+    private static final long FINGERPRINT_BUDGET_MS = 300;
+    private static final long HANDSHAKE_BUDGET_MS = 2000;
+    private static final int TCP_PROBE_TIMEOUT_MS = 50;
+    private static final int MIN_PORT = 32768;
+    private static final int MAX_PORT = 60999;
+    private static final String[] PROC_NET_FILES = {"/proc/net/tcp6", "/proc/net/tcp"};
+    private static final String TCP_STATE_LISTEN = "0A";
+
+    private final Context context;
+    private final int lastPort;
+    private final Runnable onUpdate;
+    private final AdbHelper adbHelper;
+    private final Set<Integer> rejectedPorts = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService executor;
+    private NsdManager.DiscoveryListener discoveryListener;
+    private volatile int announcedPort = -1;
+    private volatile int confirmedPort = -1;
+    private volatile boolean procNetReadable = true;
+    private volatile boolean mdnsFailed = false;
+
+    /**
+     * @param lastPort port adbd used last time, probed first (-1 if unknown)
+     * @param onUpdate invoked from a background thread whenever a new port is announced or confirmed
+     */
+    public SpeculativeDiscovery(Context context, int lastPort, Runnable onUpdate) {
+        this.context = context;
+        this.lastPort = lastPort;
+        this.onUpdate = onUpdate;
+        this.adbHelper = new AdbHelper(context);
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        AppLog.i(TAG, "Starting speculative ADB discovery (last port: " + lastPort + ")");
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "speculative-discovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::probeCandidates, 0, PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        startMdnsWatch();
+    }
+
+    public synchronized void stop() {
+        if (discoveryListener != null) {
+            NsdManager nsdManager = (NsdManager) context.getSystemService(Context.NSD_SERVICE);
+            if (nsdManager != null) {
+                try {
+                    nsdManager.stopServiceDiscovery(discoveryListener);
+                } catch (Exception e) {
+                    AppLog.w(TAG, "Error stopping mDNS watch", e);
+                }
+            }
+            discoveryListener = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /** Port on which adbd completed an ADB handshake, or -1. */
+    public int getConfirmedPort() {
+        return confirmedPort;
+    }
+
+    /** True once the mDNS watch could not be started; no announcement will arrive in this run. */
+    public boolean hasMdnsFailed() {
+        return mdnsFailed;
+    }
+
+    /** Confirmed port if any, otherwise the port announced over mDNS, otherwise -1. */
+    public int getBestPort() {
+        return confirmedPort != -1 ? confirmedPort : announcedPort;
+    }
+
+    private void probeCandidates() {
+        if (confirmedPort != -1) {
+            return;
+        }
+
+        Set<Integer> candidates = new LinkedHashSet<>();
+        if (announcedPort > 0) candidates.add(announcedPort);
+        if (lastPort > 0) candidates.add(lastPort);
+        candidates.addAll(readListeningPorts());
+
+        for (int port : candidates) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            if (port != announcedPort && rejectedPorts.contains(port)) {
+                continue;
+            }
+            if (!isTcpOpen(port)) {
+                continue;
+            }
+            // Anything accepting TCP here is either adbd or an unrelated listener; the raw CNXN probe tells them apart
+            if (!AdbHelper.fingerprint("127.0.0.1", port, AdbDeadline.after(FINGERPRINT_BUDGET_MS))) {
+                rejectedPorts.add(port);
+                continue;
+            }
+            // Only a port that answers like adbd gets the full TLS/auth handshake; if that fails, retry next tick
+            if (adbHelper.connect("127.0.0.1", port, AdbDeadline.after(HANDSHAKE_BUDGET_MS))) {
+                AppLog.i(TAG, "Speculative discovery confirmed adbd on port " + port);
+                confirmedPort = port;
+                onUpdate.run();
+                return;
+            }
+        }
+    }
+
+    private boolean isTcpOpen(int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", port), TCP_PROBE_TIMEOUT_MS);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Listening sockets in the ephemeral range, from /proc/net/tcp{,6}.
+     * Most Android 10+ builds deny this to apps; the first failure disables it for this run.
+     */
+    private Set<Integer> readListeningPorts() {
+        Set<Integer> ports = new LinkedHashSet<>();
+        if (!procNetReadable) {
+            return ports;
+        }
+        boolean anyReadable = false;
+        for (String path : PROC_NET_FILES) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+                anyReadable = true;
+                String line = reader.readLine(); // header
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length < 4 || !TCP_STATE_LISTEN.equals(fields[3])) {
+                        continue;
+                    }
+                    int colon = fields[1].lastIndexOf(':');
+                    int port = Integer.parseInt(fields[1].substring(colon + 1), 16);
+                    if (port >= MIN_PORT && port <= MAX_PORT) {
+                        ports.add(port);
+                    }
+                }
+            } catch (Exception e) {
+                AppLog.d(TAG, "Cannot read " + path + ": " + e.getMessage());
+            }
+        }
+        if (!anyReadable) {
+            AppLog.i(TAG, "/proc/net not readable, speculative discovery limited to mDNS and last port");
+            procNetReadable = false;
+        }
+        return ports;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void startMdnsWatch() {
+        NsdManager nsdManager = (NsdManager) context.getSystemService(Context.NSD_SERVICE);
+        if (nsdManager == null) {
+            AppLog.e(TAG, "NsdManager not available, speculative discovery limited to probes");
+            onMdnsFailed();
+            return;
+        }
+
+        discoveryListener = new NsdManager.DiscoveryListener() {
+            @Override
+            public void onDiscoveryStarted(String serviceType) {
+                AppLog.i(TAG, "mDNS watch started for " + serviceType);
+            }
+
+            @Override
+            public void onServiceFound(NsdServiceInfo serviceInfo) {
+                AppLog.i(TAG, "Service found: " + serviceInfo.getServiceName());
+                nsdManager.resolveService(serviceInfo, new NsdManager.ResolveListener() {
+                    @Override
+                    public void onResolveFailed(NsdServiceInfo serviceInfo, int errorCode) {
+                        AppLog.e(TAG, "Resolve failed: " + errorCode);
+                    }
+
+                    @Override
+                    public void onServiceResolved(NsdServiceInfo serviceInfo) {
+                        InetAddress hostAddress = serviceInfo.getHost();
+                        String host = hostAddress != null ? hostAddress.getHostAddress() : null;
+                        String deviceIP = NetworkUtils.getLiveDeviceIP(context);
+                        if (host != null && host.equals(deviceIP)) {
+                            AppLog.i(TAG, "adbd announced on " + host + ":" + serviceInfo.getPort());
+                            announcedPort = serviceInfo.getPort();
+                            onUpdate.run();
+                            probeNow();
+                        } else {
+                            AppLog.w(TAG, "Skipping device with IP " + host + " (looking for " + deviceIP + ")");
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onServiceLost(NsdServiceInfo serviceInfo) {
+                AppLog.i(TAG, "Service lost: " + serviceInfo.getServiceName());
+            }
+
+            @Override
+            public void onDiscoveryStopped(String serviceType) {
+                AppLog.i(TAG, "mDNS watch stopped: " + serviceType);
+            }
+
+            @Override
+            public void onStartDiscoveryFailed(String serviceType, int errorCode) {
+                AppLog.e(TAG, "mDNS watch start failed: error " + errorCode);
+                synchronized (SpeculativeDiscovery.this) {
+                    discoveryListener = null;
+                }
+                onMdnsFailed();
+            }
+
+            @Override
+            public void onStopDiscoveryFailed(String serviceType, int errorCode) {
+                AppLog.e(TAG, "mDNS watch stop failed: error " + errorCode);
+            }
+        };
+
+        try {
+            nsdManager.discoverServices(SERVICE_TYPE, NsdManager.PROTOCOL_DNS_SD, discoveryListener);
+        } catch (Exception e) {
+            AppLog.e(TAG, "mDNS watch error", e);
+            discoveryListener = null;
+            onMdnsFailed();
+        }
+    }
+
+    private void onMdnsFailed() {
+        mdnsFailed = true;
+        onUpdate.run();
+    }
+
+    private synchronized void probeNow() {
+        if (executor != null) {
+            executor.execute(this::probeCandidates);
+        }
+    }
+}
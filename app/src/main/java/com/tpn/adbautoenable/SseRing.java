@@ -0,0 +1,179 @@
+package com.tpn.adbautoenable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded ring of Server-Sent Events shared by any number of streaming clients.
+ * Publishers never wait for readers: each subscriber keeps its own cursor, and one that falls a
+ * whole ring behind skips ahead and receives a {@code dropped} event with the number it missed.
+ * Publishing must not log through {@link AppLog}, which may itself feed a ring.
+ */
+public class SseRing {
+    private static final long HEARTBEAT_MS = 15000;
+
+    private static final class Event {
+        final long seq;
+        final String name;
+        final String data;
+
+        Event(long seq, String name, String data) {
+            this.seq = seq;
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private final int capacity;
+    private final int maxSubscribers;
+    private final AtomicReferenceArray<Event> ring;
+    private final AtomicLong nextSeq = new AtomicLong(1);
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final Object lock = new Object();
+    private volatile boolean closed = false;
+
+    public SseRing(int capacity, int maxSubscribers) {
+        this.capacity = capacity;
+        this.maxSubscribers = maxSubscribers;
+        this.ring = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * @param name event type, or null for the default "message" event
+     * @param data single-line payload
+     */
+    public void publish(String name, String data) {
+        long seq = nextSeq.getAndIncrement();
+        ring.set((int) (seq % capacity), new Event(seq, name, data));
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /** Id of the newest published event; subscribing after it skips the backlog. */
+    public long getLastId() {
+        return nextSeq.get() - 1;
+    }
+
+    public boolean hasSubscribers() {
+        return subscribers.get() > 0;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.get();
+    }
+
+    /**
+     * Opens a stream of events after {@code lastEventId} (0 for everything still buffered).
+     *
+     * @param preamble raw SSE text sent before any buffered event, e.g. the current state; may be null
+     * @return null if the subscriber limit is reached
+     */
+    public InputStream subscribe(long lastEventId, String preamble) {
+        if (subscribers.incrementAndGet() > maxSubscribers) {
+            subscribers.decrementAndGet();
+            return null;
+        }
+        return new Stream(lastEventId, preamble);
+    }
+
+    /** Ends every open stream once it has drained what it already fetched. */
+    public void close() {
+        closed = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /** Formats one event; {@code id} is omitted when negative. */
+    public static void appendEvent(StringBuilder out, long id, String name, String data) {
+        if (id >= 0) out.append("id: ").append(id).append('\n');
+        if (name != null) out.append("event: ").append(name).append('\n');
+        out.append("data: ").append(data).append("\n\n");
+    }
+
+    /**
+     * Pulls events from the ring as the HTTP server asks for bytes, so a slow client only ever
+     * delays itself.
+     */
+    private final class Stream extends InputStream {
+        private long cursor;
+        private byte[] pending;
+        private int pendingPos = 0;
+        private boolean ended = false;
+
+        Stream(long lastEventId, String preamble) {
+            cursor = lastEventId;
+            pending = ("retry: 3000\n\n" + (preamble != null ? preamble : "")).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (pendingPos >= pending.length) {
+                if (ended || closed) {
+                    return -1;
+                }
+                fill();
+            }
+            int count = Math.min(length, pending.length - pendingPos);
+            System.arraycopy(pending, pendingPos, buffer, offset, count);
+            pendingPos += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            if (!ended) {
+                ended = true;
+                subscribers.decrementAndGet();
+            }
+        }
+
+        private void fill() throws IOException {
+            synchronized (lock) {
+                if (nextSeq.get() - 1 <= cursor && !closed) {
+                    try {
+                        lock.wait(HEARTBEAT_MS);
+                    } catch (InterruptedException e) {
+                        throw new IOException("Interrupted", e);
+                    }
+                }
+            }
+
+            StringBuilder events = new StringBuilder();
+            long end = nextSeq.get();
+            long oldest = Math.max(1, end - capacity);
+            if (cursor + 1 < oldest) {
+                appendEvent(events, -1, "dropped", Long.toString(oldest - cursor - 1));
+                cursor = oldest - 1;
+            }
+            for (long seq = cursor + 1; seq < end; seq++) {
+                Event event = ring.get((int) (seq % capacity));
+                if (event == null || event.seq < seq) {
+                    // Claimed but not yet published; pick it up on the next fill
+                    break;
+                }
+                if (event.seq == seq) {
+                    appendEvent(events, seq, event.name, event.data);
+                }
+                cursor = seq;
+            }
+            if (events.length() == 0) {
+                // Comment line; lets the server notice a client that went away
+                events.append(": heartbeat\n\n");
+            }
+            pending = events.toString().getBytes(StandardCharsets.UTF_8);
+            pendingPos = 0;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.tpn.adbautoenable;
+
+import android.content.Context;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A file from app/src/main/assets read once and kept in memory both as-is and gzip-compressed,
+ * with a content-hash ETag per encoding, so serving it is a byte copy.
+ */
+public class StaticAsset {
+    public final String mimeType;
+    private final byte[] identity;
+    private final byte[] gzip;
+    private final String hash;
+
+    private StaticAsset(String mimeType, byte[] identity, byte[] gzip, String hash) {
+        this.mimeType = mimeType;
+        this.identity = identity;
+        this.gzip = gzip;
+        this.hash = hash;
+    }
+
+    public static StaticAsset load(Context context, String path, String mimeType) throws IOException {
+        byte[] identity;
+        try (InputStream in = context.getAssets().open(path)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            identity = out.toByteArray();
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(identity.length / 3);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(compressed)) {
+            gzipOut.write(identity);
+        }
+        return new StaticAsset(mimeType, identity, compressed.toByteArray(), hash(identity));
+    }
+
+    public byte[] getBytes(boolean gzipped) {
+        return gzipped ? gzip : identity;
+    }
+
+    /** Strong ETag of one encoding; the two bodies differ byte for byte, so they can't share one. */
+    public String getETag(boolean gzipped) {
+        return "\"" + hash + (gzipped ? "-gz" : "") + "\"";
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android release ships SHA-256; fall back to something that still changes with the content
+            return Integer.toHexString(Arrays.hashCode(data)) + "-" + data.length;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.tpn.adbautoenable;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.provider.Settings;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the /api/status document fresh in the background so requests never wait on sockets.
+ * Probes every {@link #MIN_INTERVAL_MS} while something is changing or a task is running and
+ * backs off to {@link #MAX_INTERVAL_MS} while the result stays the same. Config and network
+ * changes trigger an immediate re-probe.
+ * Every distinct document gets the next version number, so clients can revalidate with an ETag
+ * or block in {@link #awaitChange} until the version moves. Task executor counters change after
+ * every task, so they are not part of the versioned document.
+ */
+public class StatusProber {
+    private static final String TAG = "ADBAutoEnable";
+    private static final long MIN_INTERVAL_MS = 2000;
+    private static final long MAX_INTERVAL_MS = 30000;
+    private static final long TRIGGER_DELAY_MS = 100;
+    private static final int SOCKET_TIMEOUT_MS = 300;
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    /** One probe result; {@link #json} is the status document, including its version but not its age. */
+    public static final class Snapshot {
+        public final String json;
+        public final long version;
+        public final long takenAt;
+        private final String content;
+        private final String epoch;
+
+        Snapshot(String content, String epoch, long version, long takenAt) {
+            this.content = content;
+            this.epoch = epoch;
+            this.version = version;
+            this.takenAt = takenAt;
+            this.json = content.substring(0, content.length() - 1) + ",\"version\":" + version + "}";
+        }
+
+        public long getAgeMs() {
+            return SystemClock.elapsedRealtime() - takenAt;
+        }
+
+        /** Weak, since the served body also carries the age and task counters. */
+        public String getETag() {
+            return "W/\"" + epoch + "-" + version + "\"";
+        }
+    }
+
+    public interface Listener {
+        /** Called on the probing thread (usually the prober's) when a probe produced a different document. */
+        void onStatusChanged(Snapshot snapshot);
+    }
+
+    private final Context context;
+    private final TaskExecutor taskExecutor;
+    private final AppConfig.Listener configListener = key -> requestRefresh();
+    private final NetworkUtils.SnapshotListener networkListener = (previous, current) -> requestRefresh();
+    // Separate from the scheduling lock so requestRefresh() on the main thread never waits for sockets
+    private final Object probeLock = new Object();
+    // Tells ETags from an earlier process or prober apart, since versions restart at 1
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36) + "." + instances.incrementAndGet();
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> nextProbe;
+    private volatile Snapshot snapshot;
+    private volatile Boolean hasPermission;
+    private volatile Listener listener;
+    private long interval = MIN_INTERVAL_MS;
+
+    public StatusProber(Context context, TaskExecutor taskExecutor) {
+        this.context = context;
+        this.taskExecutor = taskExecutor;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "status-prober"));
+        AppConfig.get(context).addListener(configListener);
+        NetworkUtils.addSnapshotListener(networkListener);
+        schedule(0);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        AppConfig.get(context).removeListener(configListener);
+        NetworkUtils.removeSnapshotListener(networkListener);
+        scheduler.shutdownNow();
+        scheduler = null;
+        nextProbe = null;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Latest snapshot. Only the very first call, before the prober has finished a probe,
+     * probes on the calling thread.
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        return current != null ? current : probe();
+    }
+
+    /**
+     * Blocks until the document version differs from {@code version} or {@code timeoutMs} passes.
+     *
+     * @return the latest snapshot, whether or not it changed
+     */
+    public Snapshot awaitChange(long version, long timeoutMs) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        synchronized (probeLock) {
+            Snapshot current = getSnapshot();
+            while (current.version == version) {
+                long remaining = deadline - SystemClock.elapsedRealtime();
+                if (remaining <= 0) {
+                    break;
+                }
+                probeLock.wait(remaining);
+                current = snapshot;
+            }
+            return current;
+        }
+    }
+
+    /** Probes on the calling thread, for callers that just changed something and need the result. */
+    public Snapshot refreshNow() {
+        Snapshot current = probe();
+        requestRefresh();
+        return current;
+    }
+
+    /** Re-probes shortly, and at the fast rate until the result settles again. */
+    public synchronized void requestRefresh() {
+        interval = MIN_INTERVAL_MS;
+        schedule(TRIGGER_DELAY_MS);
+    }
+
+    /** Forgets the cached WRITE_SECURE_SETTINGS result, e.g. after pairing or a reset. */
+    public void invalidatePermission() {
+        hasPermission = null;
+        requestRefresh();
+    }
+
+    private synchronized void schedule(long delayMs) {
+        if (scheduler == null) {
+            return;
+        }
+        if (nextProbe != null) {
+            nextProbe.cancel(false);
+        }
+        nextProbe = scheduler.schedule(this::probeAndReschedule, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void probeAndReschedule() {
+        Snapshot previous = snapshot;
+        Snapshot current = probe();
+        boolean changed = previous == null || previous.version != current.version;
+        synchronized (this) {
+            interval = changed || taskExecutor.isBusy() ? MIN_INTERVAL_MS : Math.min(interval * 2, MAX_INTERVAL_MS);
+            schedule(interval);
+        }
+    }
+
+    private Snapshot probe() {
+        synchronized (probeLock) {
+            return probeLocked();
+        }
+    }
+
+    private Snapshot probeLocked() {
+        AppConfig config = AppConfig.get(context);
+        int targetPort = config.getTargetPort();
+        int lastPort = config.getLastPort();
+        String deviceIP = NetworkUtils.getLiveDeviceIP(context);
+
+        boolean targetAvailable = isListening(deviceIP, targetPort);
+        int currentPort = targetAvailable ? targetPort
+                : lastPort > 0 && lastPort != targetPort && isListening(deviceIP, lastPort) ? lastPort : -1;
+
+        StringBuilder lastStatus = new StringBuilder();
+        AppLog.escapeJson(config.getLastStatus(), lastStatus);
+        String content = String.format(Locale.US,
+                "{\"lastStatus\":\"%s\",\"deviceIP\":\"%s\",\"currentPort\":%d,\"isPaired\":%b,\"hasPermission\":%b,\"adb5555Available\":%b,\"targetPort\":%d,\"webServerEnabled\":%b,\"fastPathHits\":%d,\"watchdogEnabled\":%b,\"keepaliveEnabled\":%b,\"settingsReasserts\":%d}",
+                lastStatus, deviceIP, currentPort, config.isPaired(), checkPermission(), targetAvailable, targetPort,
+                config.isWebServerEnabled(), config.getFastPathHits(), config.isWatchdogEnabled(),
+                config.isKeepaliveEnabled(), config.getSettingsReasserts());
+        Snapshot previous = snapshot;
+        boolean changed = previous == null || !previous.content.equals(content);
+        long version = previous == null ? 1 : changed ? previous.version + 1 : previous.version;
+        Snapshot result = new Snapshot(content, epoch, version, SystemClock.elapsedRealtime());
+        snapshot = result;
+        if (changed) {
+            probeLock.notifyAll();
+            Listener currentListener = listener;
+            if (currentListener != null) {
+                currentListener.onStatusChanged(result);
+            }
+        }
+        return result;
+    }
+
+    private boolean checkPermission() {
+        Boolean cached = hasPermission;
+        if (cached == null) {
+            try {
+                Settings.Global.putInt(context.getContentResolver(), "adb_wifi_enabled", 1);
+                cached = true;
+            } catch (SecurityException e) {
+                cached = false;
+            }
+            AppLog.d(TAG, "Status prober: WRITE_SECURE_SETTINGS " + (cached ? "granted" : "missing"));
+            hasPermission = cached;
+        }
+        return cached;
+    }
+
+    // Device IP first (Chromecast/TV devices don't always expose loopback), then loopback
+    private boolean isListening(String deviceIP, int port) {
+        return (!deviceIP.equals("127.0.0.1") && checkSocket(deviceIP, port)) || checkSocket("127.0.0.1", port);
+    }
+
+    private boolean checkSocket(String host, int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), SOCKET_TIMEOUT_MS);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.tpn.adbautoenable;
+
+import android.os.SystemClock;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The service's executor for operations that talk to adbd (boot configuration, recovery,
+ * port switch, post-pairing self-grant). Background operations and user-initiated ones
+ * ({@link #OP_SWITCH}, {@link #OP_PAIR_GRANT}) run on two single-worker lanes: each lane runs one
+ * operation at a time, since a tcpip switch restarts adbd under whatever else is connected, but a
+ * user's switch does not wait minutes behind a boot run. Submitting an operation whose key is
+ * already queued or running returns the in-flight future instead of starting a second copy.
+ */
+public class TaskExecutor {
+    private static final String TAG = "ADBAutoEnable";
+
+    public static final String OP_BOOT = "boot";
+    public static final String OP_RECOVER = "recover";
+    public static final String OP_ADDRESS_CHECK = "address-check";
+    public static final String OP_SWITCH = "switch";
+    public static final String OP_PAIR_GRANT = "pair-grant";
+
+    private final ThreadPoolExecutor backgroundLane;
+    private final ThreadPoolExecutor userLane;
+    private final ConcurrentHashMap<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalQueueWaitMs = new AtomicLong();
+    private final AtomicLong maxQueueWaitMs = new AtomicLong();
+
+    /**
+     * @param queueCapacity operations that may wait behind the running one in each lane before submit fails
+     */
+    public TaskExecutor(int queueCapacity) {
+        backgroundLane = lane("adb-task", queueCapacity);
+        userLane = lane("adb-user-task", queueCapacity);
+    }
+
+    private static ThreadPoolExecutor lane(String name, int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, name + "-" + threadNumber.incrementAndGet()));
+    }
+
+    private ThreadPoolExecutor laneFor(String key) {
+        return OP_SWITCH.equals(key) || OP_PAIR_GRANT.equals(key) ? userLane : backgroundLane;
+    }
+
+    /**
+     * Runs {@code task} under {@code key}, or joins the identical operation already in flight.
+     * If the queue is full, the returned future fails with a RejectedExecutionException.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(String key, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<?> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            AppLog.i(TAG, "Task " + key + " already in flight, sharing its result");
+            return (CompletableFuture<T>) existing;
+        }
+
+        long enqueuedAt = SystemClock.elapsedRealtime();
+        ThreadPoolExecutor pool = laneFor(key);
+        try {
+            pool.execute(() -> run(key, task, future, enqueuedAt));
+            submitted.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            inFlight.remove(key, future);
+            AppLog.w(TAG, "Task " + key + " rejected, queue full (" + pool.getQueue().size() + " waiting)");
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /** Fire-and-forget variant of {@link #submit(String, Callable)}. */
+    public CompletableFuture<Void> execute(String key, Runnable task) {
+        return submit(key, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public boolean isInFlight(String key) {
+        return inFlight.containsKey(key);
+    }
+
+    /** True while any operation is queued or running. */
+    public boolean isBusy() {
+        return !inFlight.isEmpty();
+    }
+
+    public int getQueueDepth() {
+        return backgroundLane.getQueue().size() + userLane.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return backgroundLane.getActiveCount() + userLane.getActiveCount();
+    }
+
+    public void shutdown() {
+        backgroundLane.shutdownNow();
+        userLane.shutdownNow();
+    }
+
+    public String toJson() {
+        long done = completed.get();
+        return String.format(Locale.US,
+                "{\"queueDepth\":%d,\"active\":%d,\"inFlight\":%d,\"submitted\":%d,\"coalesced\":%d,\"rejected\":%d,\"completed\":%d,\"avgQueueWaitMs\":%d,\"maxQueueWaitMs\":%d}",
+                getQueueDepth(), getActiveCount(), inFlight.size(), submitted.get(), coalesced.get(),
+                rejected.get(), done, done > 0 ? totalQueueWaitMs.get() / done : 0, maxQueueWaitMs.get());
+    }
+
+    private <T> void run(String key, Callable<T> task, CompletableFuture<T> future, long enqueuedAt) {
+        long waited = SystemClock.elapsedRealtime() - enqueuedAt;
+        totalQueueWaitMs.addAndGet(waited);
+        maxQueueWaitMs.accumulateAndGet(waited, Math::max);
+        AppLog.d(TAG, "Task " + key + " started after " + waited + "ms in queue");
+        T result = null;
+        Throwable failure = null;
+        try {
+            result = task.call();
+        } catch (Throwable t) {
+            AppLog.e(TAG, "Task " + key + " failed", t);
+            failure = t;
+        }
+        // Leave the in-flight map before completing, so a request arriving afterwards runs again
+        inFlight.remove(key, future);
+        completed.incrementAndGet();
+        if (failure != null) {
+            future.completeExceptionally(failure);
+        } else {
+            future.complete(result);
+        }
+    }
+}
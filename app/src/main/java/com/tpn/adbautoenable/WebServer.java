@@ -2,70 +2,301 @@ package com.tpn.adbautoenable;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.net.nsd.NsdManager;
-import android.net.nsd.NsdServiceInfo;
-import android.provider.Settings;
-import android.util.Log;
+import android.os.SystemClock;
 import fi.iki.elonen.NanoHTTPD;
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.InputStreamReader;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
 
 public class WebServer extends NanoHTTPD {
     private static final String TAG = "ADBAutoEnable";
-    private static final String PREFS_NAME = "ADBAutoEnablePrefs";
-    private static final String KEY_TARGET_PORT = "target_port";
-    private static final String SERVICE_TYPE = "_adb-tls-connect._tcp";
+    private static final int MAX_BATCH_OPS = 16;
+    private static final long BATCH_SWITCH_TIMEOUT_MS = 120000;
+    private static final long DEFAULT_STATUS_WAIT_S = 30;
+    private static final long MAX_STATUS_WAIT_S = 60;
+    private static final int EVENT_BUFFER_SIZE = 256;
+    // Streams and long-polls hold a worker each, so their caps stay well below HTTP_WORKERS
+    private static final int MAX_EVENT_STREAMS = 4;
+    private static final int HTTP_WORKERS = 12;
+    private static final int HTTP_ACCEPT_QUEUE = 24;
+    /** Read timeout for request headers and for idle keep-alive connections. */
+    private static final int IDLE_TIMEOUT_MS = 3000;
+    private static final String[] GAUGES = {
+            "adbautoenable_http_connections_active",
+            "adbautoenable_http_connections_queued",
+            "adbautoenable_http_connections_rejected_total",
+            "adbautoenable_task_queue_depth",
+            "adbautoenable_task_active",
+            "adbautoenable_sse_subscribers{stream=\"events\"}",
+            "adbautoenable_sse_subscribers{stream=\"logcat\"}",
+    };
 
     private final Context context;
     private final AdbHelper adbHelper;
-    private Boolean permissionCached = null;
-
-    public WebServer(Context context, int port) {
+    private final TaskExecutor taskExecutor;
+    private final JobRegistry jobRegistry;
+    private final LogcatTailer logcatTailer = new LogcatTailer();
+    private final SseRing events = new SseRing(EVENT_BUFFER_SIZE, MAX_EVENT_STREAMS);
+    private final JobRegistry.Listener jobListener = job -> events.publish("job", job.toJson());
+    private final StatusProber statusProber;
+    private final BoundedAsyncRunner asyncRunner = new BoundedAsyncRunner(HTTP_WORKERS, HTTP_ACCEPT_QUEUE);
+    // Switch and test only submit a coalescing job and return, so an in-flight cap would limit nothing;
+    // the buckets stop clients from re-triggering in a loop
+    private final EndpointLimiter switchLimiter = new EndpointLimiter(1 / 10.0, 2, Integer.MAX_VALUE);
+    private final EndpointLimiter testLimiter = new EndpointLimiter(1 / 30.0, 2, Integer.MAX_VALUE);
+    // Pairing runs inline for up to its 30s budget
+    private final EndpointLimiter pairLimiter = new EndpointLimiter(1 / 5.0, 3, 1);
+    // A batch may hold a worker for a whole switch; a switch inside it still takes a switch token
+    private final EndpointLimiter batchLimiter = new EndpointLimiter(1.0, 5, 1);
+    // Each admitted stream may have to start the logcat process
+    private final EndpointLimiter logcatLimiter = new EndpointLimiter(1 / 2.0, 4, Integer.MAX_VALUE);
+    // Long-polls hold a worker for up to a minute
+    private final EndpointLimiter longPollLimiter = new EndpointLimiter(Double.POSITIVE_INFINITY, 1, 4);
+    private StaticAsset indexPage;
+
+    /**
+     * @param taskExecutor the service's executor; switch, test and self-grant run there so they
+     *                     never overlap with each other or with boot configuration
+     * @param jobRegistry  jobs started by /api/switch and /api/test, polled via /api/jobs
+     */
+    public WebServer(Context context, int port, TaskExecutor taskExecutor, JobRegistry jobRegistry) {
         super(port);
         this.context = context;
         this.adbHelper = new AdbHelper(context);
+        this.taskExecutor = taskExecutor;
+        this.jobRegistry = jobRegistry;
+        this.statusProber = new StatusProber(context, taskExecutor);
+        setAsyncRunner(asyncRunner);
+    }
+
+    private AppConfig config() {
+        return AppConfig.get(context);
+    }
+
+    @Override
+    public void start() throws IOException {
+        start(IDLE_TIMEOUT_MS, true);
+    }
+
+    @Override
+    protected ClientHandler createClientHandler(Socket socket, InputStream inputStream) {
+        return new BoundedAsyncRunner.Connection(this, inputStream, socket);
     }
 
-    private SharedPreferences getPrefs() {
-        return NetworkUtils.getDeviceProtectedPrefs(context, PREFS_NAME);
+    @Override
+    public void start(int timeout, boolean daemon) throws IOException {
+        super.start(timeout, daemon);
+        statusProber.setListener(snapshot -> events.publish("status", snapshot.json));
+        jobRegistry.addListener(jobListener);
+        AppLog.setListener(this::publishLog);
+        statusProber.start();
+        registerGauges();
     }
 
+    @Override
+    public void stop() {
+        super.stop();
+        for (String gauge : GAUGES) {
+            Metrics.removeGauge(gauge);
+        }
+        AppLog.setListener(null);
+        jobRegistry.removeListener(jobListener);
+        statusProber.stop();
+        events.close();
+        logcatTailer.stop();
+        config().flush();
+    }
+
+    private void publishLog(AppLog.Entry entry) {
+        // Formatting every log line is only worth it while someone is listening
+        if (events.hasSubscribers()) {
+            StringBuilder json = new StringBuilder();
+            AppLog.appendEntry(entry, json);
+            events.publish("log", json.toString());
+        }
+    }
+
+    private void registerGauges() {
+        Metrics.gauge(GAUGES[0], "Connections being served", "gauge", asyncRunner::getActive);
+        Metrics.gauge(GAUGES[1], "Accepted connections waiting for a worker", "gauge", asyncRunner::getQueued);
+        Metrics.gauge(GAUGES[2], "Connections refused with 503 because the accept queue was full", "counter",
+                asyncRunner::getRejected);
+        Metrics.gauge(GAUGES[3], "Operations waiting on the task executor", "gauge", taskExecutor::getQueueDepth);
+        Metrics.gauge(GAUGES[4], "Operations running on the task executor", "gauge", taskExecutor::getActiveCount);
+        Metrics.gauge(GAUGES[5], "Open Server-Sent Events streams", "gauge", events::getSubscriberCount);
+        Metrics.gauge(GAUGES[6], "Open Server-Sent Events streams", "gauge", logcatTailer::getSubscriberCount);
+    }
+
+    /** Times every request per endpoint; streaming responses count until their headers are ready. */
     @Override
     public Response serve(IHTTPSession session) {
+        long startedAt = SystemClock.elapsedRealtime();
+        try {
+            return serveLimited(session);
+        } finally {
+            String uri = session.getUri();
+            String endpoint = uri.startsWith("/api/jobs/") ? "/api/jobs" : uri.equals("/index.html") ? "/" : uri;
+            Metrics.HTTP_REQUEST.get(endpoint).observeMs(SystemClock.elapsedRealtime() - startedAt);
+        }
+    }
+
+    /**
+     * Applies the endpoint's limiter, if it has one, before routing. Requests over the limit get
+     * a 429 with Retry-After and never reach the handler.
+     */
+    private Response serveLimited(IHTTPSession session) {
+        EndpointLimiter limiter = limiterFor(session);
+        if (limiter == null) {
+            return route(session);
+        }
+        long retryAfter = limiter.tryAcquire();
+        if (retryAfter > 0) {
+            Metrics.HTTP_LIMITED.inc();
+            AppLog.w(TAG, "Web API: " + session.getUri() + " limited, retry after " + retryAfter + "s");
+            Response response = newFixedLengthResponse(Response.Status.TOO_MANY_REQUESTS, "application/json",
+                    "{\"error\":\"Too many requests\",\"retryAfter\":" + retryAfter + "}");
+            response.addHeader("Retry-After", Long.toString(retryAfter));
+            return response;
+        }
+        try {
+            return route(session);
+        } finally {
+            limiter.release();
+        }
+    }
+
+    // Only requests that route() hands to a handler doing real work; status, jobs and log reads stay
+    // unlimited, and a wrong method (routed to 404) must not spend tokens
+    private EndpointLimiter limiterFor(IHTTPSession session) {
+        boolean post = session.getMethod() == Method.POST;
+        switch (session.getUri()) {
+            case "/api/switch":
+                return post ? switchLimiter : null;
+            case "/api/test":
+                return post ? testLimiter : null;
+            case "/api/pair":
+                return post ? pairLimiter : null;
+            case "/api/batch":
+                return post ? batchLimiter : null;
+            case "/api/logcat/stream":
+                return logcatLimiter;
+            case "/api/status":
+                return session.getParameters().containsKey("waitForChange") ? longPollLimiter : null;
+            default:
+                return null;
+        }
+    }
+
+    private String limitsJson() {
+        return "{\"/api/switch\":" + switchLimiter.toJson()
+                + ",\"/api/test\":" + testLimiter.toJson()
+                + ",\"/api/pair\":" + pairLimiter.toJson()
+                + ",\"/api/batch\":" + batchLimiter.toJson()
+                + ",\"/api/logcat/stream\":" + logcatLimiter.toJson()
+                + ",\"/api/status?waitForChange\":" + longPollLimiter.toJson() + "}";
+    }
+
+    private Response route(IHTTPSession session) {
         String uri = session.getUri();
         Method method = session.getMethod();
 
         if (uri.equals("/api/pair") && method == Method.POST) {
             return handlePairing(session);
         } else if (uri.equals("/api/status")) {
-            return handleStatus();
-        } else if (uri.equals("/api/test")) {
+            return handleStatus(session);
+        } else if (uri.equals("/api/test") && method == Method.POST) {
             return handleTest();
-        } else if (uri.equals("/api/switch")) {
+        } else if (uri.equals("/api/switch") && method == Method.POST) {
             return handleSwitch();
         } else if (uri.equals("/api/port") && method == Method.POST) {
             return handleSetPort(session);
         } else if (uri.equals("/api/logs")) {
-            return handleLogs();
+            return handleLogs(session);
+        } else if (uri.equals("/api/events")) {
+            return handleEvents(session);
+        } else if (uri.equals("/api/logcat/stream")) {
+            return handleLogcatStream(session);
         } else if (uri.equals("/api/reset") && method == Method.POST) {
             return handleReset();
         } else if (uri.equals("/api/webserver") && method == Method.POST) {
             return handleToggleWebServer(session);
+        } else if (uri.equals("/api/watchdog") && method == Method.POST) {
+            return handleToggleWatchdog(session);
+        } else if (uri.equals("/api/keepalive") && method == Method.POST) {
+            return handleToggleKeepalive(session);
+        } else if (uri.equals("/api/jobs")) {
+            return newFixedLengthResponse(Response.Status.OK, "application/json", jobRegistry.toJson());
+        } else if (uri.startsWith("/api/jobs/")) {
+            return handleJob(uri.substring("/api/jobs/".length()), method);
+        } else if (uri.equals("/api/batch") && method == Method.POST) {
+            return handleBatch(session);
+        } else if (uri.equals("/api/server")) {
+            return newFixedLengthResponse(Response.Status.OK, "application/json",
+                    "{\"http\":" + asyncRunner.toJson() + ",\"limits\":" + limitsJson() + "}");
+        } else if (uri.equals("/api/retry")) {
+            return method == Method.POST ? handleSetRetryPolicy(session) : handleGetRetryPolicy();
+        } else if (uri.equals("/metrics")) {
+            return newFixedLengthResponse(Response.Status.OK, "text/plain; version=0.0.4; charset=utf-8", Metrics.render());
+        } else if (uri.equals("/") || uri.equals("/index.html")) {
+            return handleIndex(session);
         } else {
-            return newFixedLengthResponse(getHTML());
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, NanoHTTPD.MIME_PLAINTEXT, "Not found");
         }
     }
 
+    @Override
+    protected boolean useGzipWhenAccepted(Response response) {
+        // The UI is already compressed, and gzip would hold SSE events back until its buffer fills
+        return response.getHeader("Content-Encoding") == null
+                && !"text/event-stream".equals(response.getMimeType())
+                && super.useGzipWhenAccepted(response);
+    }
+
+    /**
+     * The web UI is a static asset with no per-device values; it pulls everything from the API.
+     * Served gzip-compressed when the client accepts it and revalidated through its ETag.
+     */
+    private Response handleIndex(IHTTPSession session) {
+        StaticAsset page;
+        try {
+            page = indexPage();
+        } catch (IOException e) {
+            AppLog.e(TAG, "Web UI asset missing", e);
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, NanoHTTPD.MIME_PLAINTEXT, "Web UI unavailable");
+        }
+
+        Map<String, String> headers = session.getHeaders();
+        boolean gzipped = acceptsGzip(headers.get("accept-encoding"));
+        String etag = page.getETag(gzipped);
+        Response response;
+        if (matchesETag(headers.get("if-none-match"), etag)) {
+            response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, page.mimeType, "");
+        } else {
+            byte[] body = page.getBytes(gzipped);
+            response = newFixedLengthResponse(Response.Status.OK, page.mimeType, new ByteArrayInputStream(body), body.length);
+            if (gzipped) {
+                response.addHeader("Content-Encoding", "gzip");
+            }
+        }
+        response.addHeader("ETag", etag);
+        response.addHeader("Cache-Control", "no-cache");
+        response.addHeader("Vary", "Accept-Encoding");
+        return response;
+    }
+
+    private synchronized StaticAsset indexPage() throws IOException {
+        if (indexPage == null) {
+            indexPage = StaticAsset.load(context, "index.html", NanoHTTPD.MIME_HTML + "; charset=utf-8");
+        }
+        return indexPage;
+    }
+
     private Response handleToggleWebServer(IHTTPSession session) {
         try {
             Map<String, String> files = new HashMap<>();
@@ -75,9 +306,8 @@ public class WebServer extends NanoHTTPD {
             String enabledStr = (enabledList != null && !enabledList.isEmpty()) ? enabledList.get(0) : "true";
             boolean enable = Boolean.parseBoolean(enabledStr);
 
-            SharedPreferences prefs = getPrefs();
-            prefs.edit().putBoolean("web_server_enabled", enable).apply();
-            Log.i(TAG, "Web API: Web server enabled set to " + enable);
+            config().setWebServerEnabled(enable);
+            AppLog.i(TAG, "Web API: Web server enabled set to " + enable);
 
             if (!enable) {
                 // Stop server on a background thread after a brief delay so response finishes sending
@@ -88,9 +318,9 @@ public class WebServer extends NanoHTTPD {
                             // Or stop self/server directly if reference is held
                         }
                         stop();
-                        Log.i(TAG, "WebServer stopped via API request");
+                        AppLog.i(TAG, "WebServer stopped via API request");
                     } catch (Exception e) {
-                        Log.e(TAG, "Error stopping web server", e);
+                        AppLog.e(TAG, "Error stopping web server", e);
                     }
                 }).start();
             }
@@ -98,7 +328,51 @@ public class WebServer extends NanoHTTPD {
             return newFixedLengthResponse(Response.Status.OK, "application/json",
                     "{\"success\":true,\"message\":\"Web server " + (enable ? "enabled" : "disabled (will stop shortly)") + "\"}");
         } catch (Exception e) {
-            Log.e(TAG, "Web API: Toggle web server error", e);
+            AppLog.e(TAG, "Web API: Toggle web server error", e);
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json",
+                    "{\"error\":\"" + e.getMessage() + "\"}");
+        }
+    }
+
+    private Response handleToggleWatchdog(IHTTPSession session) {
+        try {
+            Map<String, String> files = new HashMap<>();
+            session.parseBody(files);
+            Map<String, List<String>> params = session.getParameters();
+            List<String> enabledList = params.get("enabled");
+            String enabledStr = (enabledList != null && !enabledList.isEmpty()) ? enabledList.get(0) : "true";
+            boolean enable = Boolean.parseBoolean(enabledStr);
+
+            // AdbConfigService listens for this key and starts/stops the watchdog
+            config().setWatchdogEnabled(enable);
+            AppLog.i(TAG, "Web API: Watchdog enabled set to " + enable);
+
+            return newFixedLengthResponse(Response.Status.OK, "application/json",
+                    "{\"success\":true,\"message\":\"Watchdog " + (enable ? "enabled" : "disabled") + "\"}");
+        } catch (Exception e) {
+            AppLog.e(TAG, "Web API: Toggle watchdog error", e);
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json",
+                    "{\"error\":\"" + e.getMessage() + "\"}");
+        }
+    }
+
+    private Response handleToggleKeepalive(IHTTPSession session) {
+        try {
+            Map<String, String> files = new HashMap<>();
+            session.parseBody(files);
+            Map<String, List<String>> params = session.getParameters();
+            List<String> enabledList = params.get("enabled");
+            String enabledStr = (enabledList != null && !enabledList.isEmpty()) ? enabledList.get(0) : "true";
+            boolean enable = Boolean.parseBoolean(enabledStr);
+
+            // AdbConfigService listens for this key and opens/closes the keepalive session
+            config().setKeepaliveEnabled(enable);
+            AppLog.i(TAG, "Web API: Keepalive enabled set to " + enable);
+
+            return newFixedLengthResponse(Response.Status.OK, "application/json",
+                    "{\"success\":true,\"message\":\"Keepalive " + (enable ? "enabled" : "disabled") + "\"}");
+        } catch (Exception e) {
+            AppLog.e(TAG, "Web API: Toggle keepalive error", e);
             return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json",
                     "{\"error\":\"" + e.getMessage() + "\"}");
         }
@@ -116,7 +390,7 @@ public class WebServer extends NanoHTTPD {
             String portStr = (portList != null && !portList.isEmpty()) ? portList.get(0) : null;
             String code = (codeList != null && !codeList.isEmpty()) ? codeList.get(0) : null;
 
-            Log.i(TAG, "Web API: Received pairing request - port: " + portStr + ", code: " + code);
+            AppLog.i(TAG, "Web API: Received pairing request - port: " + portStr + ", code: " + code);
 
             if (portStr == null || code == null || portStr.isEmpty() || code.isEmpty()) {
                 return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json",
@@ -124,43 +398,42 @@ public class WebServer extends NanoHTTPD {
             }
 
             int port = Integer.parseInt(portStr);
-            Log.i(TAG, "Web API: Pairing on port " + port + " with code " + code);
+            AppLog.i(TAG, "Web API: Pairing on port " + port + " with code " + code);
 
             boolean success = adbHelper.pair("127.0.0.1", port, code);
 
             if (success) {
-                SharedPreferences prefs = getPrefs();
-                prefs.edit().putBoolean("is_paired", true).apply();
-                Log.i(TAG, "Web API: Pairing successful");
+                config().setPaired(true);
+                AppLog.i(TAG, "Web API: Pairing successful");
 
                 //Clear permission cache so it re-checks after self-grant
-                permissionCached = null;
+                statusProber.invalidatePermission();
 
-                new Thread(() -> {
+                taskExecutor.execute(TaskExecutor.OP_PAIR_GRANT, () -> {
                     try {
                         Thread.sleep(2000);
-                        Log.i(TAG, "Attempting to self-grant WRITE_SECURE_SETTINGS permission");
+                        AppLog.i(TAG, "Attempting to self-grant WRITE_SECURE_SETTINGS permission");
 
-                        int adbPort = discoverAdbPort();
+                        String deviceIP = getDeviceIP();
+                        int adbPort = MdnsDiscovery.findAdbPort(context, deviceIP, MdnsDiscovery.DEFAULT_TIMEOUT_MS);
                         if (adbPort == -1) {
-                            Log.w(TAG, "Could not discover ADB port for self-grant, skipping");
+                            AppLog.w(TAG, "Could not discover ADB port for self-grant, skipping");
                             return;
                         }
 
-                        String deviceIP = getDeviceIP();
-                        Log.i(TAG, "Found ADB on port " + adbPort + ", attempting self-grant via " + deviceIP);
+                        AppLog.i(TAG, "Found ADB on port " + adbPort + ", attempting self-grant via " + deviceIP);
                         boolean granted = adbHelper.selfGrantPermission(deviceIP, adbPort,
                                 "com.tpn.adbautoenable", "android.permission.WRITE_SECURE_SETTINGS");
 
                         if (granted) {
-                            Log.i(TAG, "Successfully self-granted WRITE_SECURE_SETTINGS permission!");
+                            AppLog.i(TAG, "Successfully self-granted WRITE_SECURE_SETTINGS permission!");
                         } else {
-                            Log.w(TAG, "Failed to self-grant permission, user will need to grant manually");
+                            AppLog.w(TAG, "Failed to self-grant permission, user will need to grant manually");
                         }
                     } catch (Exception e) {
-                        Log.e(TAG, "Error during self-grant attempt", e);
+                        AppLog.e(TAG, "Error during self-grant attempt", e);
                     }
-                }).start();
+                });
 
                 return newFixedLengthResponse(Response.Status.OK, "application/json",
                         "{\"success\":true,\"message\":\"Pairing successful! Attempting to self-grant permissions...\"}");
@@ -173,42 +446,235 @@ public class WebServer extends NanoHTTPD {
             return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json",
                     "{\"error\":\"Invalid port number\"}");
         } catch (Exception e) {
-            Log.e(TAG, "Web API: Pairing error", e);
+            AppLog.e(TAG, "Web API: Pairing error", e);
             return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json",
                     "{\"error\":\"" + e.getMessage() + "\"}");
         }
     }
 
-    private Response handleStatus() {
-        Log.d(TAG, "handleStatus() called - checking status");
-        SharedPreferences prefs = getPrefs();
-        String lastStatus = prefs.getString("last_status", "Not run yet");
-        boolean isPaired = prefs.getBoolean("is_paired", false);
-        int targetPort = getTargetPort();
-        int currentPort = getCurrentPort();
-        boolean webServerEnabled = prefs.getBoolean("web_server_enabled", true);
+    /**
+     * Serves the prober's cached snapshot plus its age; never touches a socket.
+     * Answers 304 when If-None-Match carries the current ETag. With {@code waitForChange=<version>}
+     * the request is held until the version differs, for up to {@code timeout} seconds.
+     */
+    private Response handleStatus(IHTTPSession session) {
+        StatusProber.Snapshot snapshot = statusProber.getSnapshot();
+        Map<String, List<String>> params = session.getParameters();
+        if (params.containsKey("waitForChange")) {
+            try {
+                long version = longParam(params, "waitForChange", snapshot.version);
+                long timeoutMs = Math.min(Math.max(longParam(params, "timeout", DEFAULT_STATUS_WAIT_S), 0),
+                        MAX_STATUS_WAIT_S) * 1000;
+                snapshot = statusProber.awaitChange(version, timeoutMs);
+            } catch (NumberFormatException e) {
+                return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json",
+                        "{\"error\":\"Invalid waitForChange or timeout\"}");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
 
-        boolean adbTargetAvailable = checkTargetPortAvailable();
+        String etag = snapshot.getETag();
+        Response response;
+        if (matchesETag(session.getHeaders().get("if-none-match"), etag)) {
+            response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, "application/json", "");
+        } else {
+            // Neither the age nor the task counters are part of the versioned document
+            String json = snapshot.json.substring(0, snapshot.json.length() - 1) + ",\"ageMs\":" + snapshot.getAgeMs()
+                    + ",\"tasks\":" + taskExecutor.toJson() + "}";
+            response = newFixedLengthResponse(Response.Status.OK, "application/json", json);
+        }
+        response.addHeader("ETag", etag);
+        response.addHeader("Cache-Control", "no-cache");
+        return response;
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        // Weak comparison, as If-None-Match requires
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** True if Accept-Encoding allows gzip: listed, or covered by {@code *}, with a q-value above 0. */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        float gzipQ = -1;
+        float wildcardQ = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.US);
+            float q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        q = Float.parseFloat(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzipQ = q;
+            } else if (name.equals("*")) {
+                wildcardQ = q;
+            }
+        }
+        return gzipQ >= 0 ? gzipQ > 0 : wildcardQ > 0;
+    }
 
-        // Cache permission check - only do it once
-        if (permissionCached == null) {
-            Log.d(TAG, "handleStatus() - checking WRITE_SECURE_SETTINGS permission (cached)");
+    /**
+     * POST /api/batch runs {@code ops} (comma-separated, in order) in one request and returns every
+     * result. Operations share one {@link SwitchContext}, so "discover,switch" browses mDNS once.
+     * <ul>
+     * <li>{@code port} sets the target port from the {@code port} parameter</li>
+     * <li>{@code discover} finds the current ADB port</li>
+     * <li>{@code switch} runs the switch job and waits for it</li>
+     * <li>{@code status} returns a freshly probed status document</li>
+     * <li>{@code config} applies {@code watchdog}/{@code keepalive} if given and returns the settings</li>
+     * </ul>
+     * The first failing operation stops the batch unless {@code continueOnError=true}; later ones are reported as skipped.
+     */
+    private Response handleBatch(IHTTPSession session) {
+        Map<String, List<String>> params;
+        try {
+            session.parseBody(new HashMap<>());
+            params = session.getParameters();
+        } catch (Exception e) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json",
+                    "{\"error\":\"Invalid request body\"}");
+        }
+        List<String> opsList = params.get("ops");
+        if (opsList == null || opsList.isEmpty() || opsList.get(0).trim().isEmpty()) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json",
+                    "{\"error\":\"ops required, e.g. ops=port,switch,status\"}");
+        }
+        String[] ops = opsList.get(0).split(",");
+        if (ops.length > MAX_BATCH_OPS) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json",
+                    "{\"error\":\"At most " + MAX_BATCH_OPS + " ops per batch\"}");
+        }
+        boolean continueOnError = params.containsKey("continueOnError")
+                && Boolean.parseBoolean(params.get("continueOnError").get(0));
+
+        long startedAt = SystemClock.elapsedRealtime();
+        SwitchContext switchContext = new SwitchContext();
+        StringBuilder results = new StringBuilder();
+        boolean failed = false;
+        for (String rawOp : ops) {
+            String op = rawOp.trim();
+            if (results.length() > 0) results.append(',');
+            if (failed && !continueOnError) {
+                results.append("{\"op\":\"").append(jsonEscape(op)).append("\",\"ok\":false,\"skipped\":true}");
+                continue;
+            }
+            long opStartedAt = SystemClock.elapsedRealtime();
+            String result;
             try {
-                Settings.Global.putInt(context.getContentResolver(), "adb_wifi_enabled", 1);
-                permissionCached = true;
-                Log.d(TAG, "handleStatus() - permission check SUCCESS");
-            } catch (SecurityException e) {
-                permissionCached = false;
-                Log.d(TAG, "handleStatus() - permission check FAILED");
+                result = runBatchOp(op, params, switchContext);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result = "\"error\":\"Interrupted\"";
+            } catch (Exception e) {
+                result = "\"error\":\"" + jsonEscape(e.getMessage() != null ? e.getMessage() : e.toString()) + "\"";
             }
+            boolean ok = !result.startsWith("\"error\"");
+            failed |= !ok;
+            results.append("{\"op\":\"").append(jsonEscape(op)).append("\",\"ok\":").append(ok)
+                    .append(",\"ms\":").append(SystemClock.elapsedRealtime() - opStartedAt)
+                    .append(',').append(result).append('}');
         }
+        AppLog.i(TAG, "Web API: Batch [" + opsList.get(0) + "] finished in " + (SystemClock.elapsedRealtime() - startedAt) + "ms");
+        return newFixedLengthResponse(Response.Status.OK, "application/json",
+                "{\"success\":" + !failed + ",\"elapsedMs\":" + (SystemClock.elapsedRealtime() - startedAt)
+                        + ",\"results\":[" + results + "]}");
+    }
 
-        String json = String.format(Locale.US,
-                "{\"lastStatus\":\"%s\",\"currentPort\":%d,\"isPaired\":%b,\"hasPermission\":%b,\"adb5555Available\":%b,\"targetPort\":%d,\"webServerEnabled\":%b}",
-                lastStatus, currentPort, isPaired, permissionCached, adbTargetAvailable, targetPort, webServerEnabled
-        );
-        Log.d(TAG, "handleStatus() completed");
-        return newFixedLengthResponse(Response.Status.OK, "application/json", json);
+    /**
+     * @return the result's JSON members (without braces); an {@code "error"} member marks a failure
+     */
+    private String runBatchOp(String op, Map<String, List<String>> params, SwitchContext switchContext) throws Exception {
+        switch (op) {
+            case "port": {
+                long port = longParam(params, "port", -1);
+                if (port < 1 || port > 65535) {
+                    return "\"error\":\"Invalid port range (1-65535)\"";
+                }
+                config().setTargetPort((int) port);
+                switchContext.targetPortSet = true;
+                AppLog.i(TAG, "Web API: Batch set target port to " + port);
+                return "\"targetPort\":" + port;
+            }
+            case "discover": {
+                int port = switchContext.discover();
+                return port != -1 ? "\"port\":" + port : "\"error\":\"Could not find ADB port\"";
+            }
+            case "switch": {
+                long retryAfter = switchLimiter.tryAcquire();
+                if (retryAfter > 0) {
+                    Metrics.HTTP_LIMITED.inc();
+                    return "\"error\":\"Too many requests\",\"retryAfter\":" + retryAfter;
+                }
+                try {
+                    JobRegistry.Job job = jobRegistry.submit(TaskExecutor.OP_SWITCH, j -> {
+                        switchContext.switchRan = true;
+                        return runSwitch(j, switchContext);
+                    });
+                    if (!job.awaitFinish(BATCH_SWITCH_TIMEOUT_MS)) {
+                        return "\"error\":\"Switch still running\",\"job\":" + job.toJson();
+                    }
+                    // Not our body: the registry handed back a switch that was already in flight
+                    boolean shared = !switchContext.switchRan;
+                    if (shared && switchContext.targetPortSet) {
+                        return "\"error\":\"Joined switch job " + job.id
+                                + " that was already running; it may not have used the new target port\",\"shared\":true,\"job\":"
+                                + job.toJson();
+                    }
+                    return job.getState() == JobRegistry.State.SUCCEEDED
+                            ? "\"shared\":" + shared + ",\"job\":" + job.toJson()
+                            : "\"error\":\"Switch " + job.getState() + "\",\"shared\":" + shared + ",\"job\":" + job.toJson();
+                } finally {
+                    switchLimiter.release();
+                }
+            }
+            case "status":
+                return "\"status\":" + statusProber.refreshNow().json;
+            case "config": {
+                AppConfig config = config();
+                if (params.containsKey("watchdog")) {
+                    config.setWatchdogEnabled(Boolean.parseBoolean(params.get("watchdog").get(0)));
+                }
+                if (params.containsKey("keepalive")) {
+                    config.setKeepaliveEnabled(Boolean.parseBoolean(params.get("keepalive").get(0)));
+                }
+                return String.format(Locale.US,
+                        "\"config\":{\"targetPort\":%d,\"lastPort\":%d,\"isPaired\":%b,\"webServerEnabled\":%b,\"watchdogEnabled\":%b,\"keepaliveEnabled\":%b}",
+                        config.getTargetPort(), config.getLastPort(), config.isPaired(), config.isWebServerEnabled(),
+                        config.isWatchdogEnabled(), config.isKeepaliveEnabled());
+            }
+            default:
+                return "\"error\":\"Unknown op\"";
+        }
+    }
+
+    private static String jsonEscape(String value) {
+        StringBuilder out = new StringBuilder();
+        AppLog.escapeJson(value, out);
+        return out.toString();
     }
 
     private Response handleSetPort(IHTTPSession session) {
@@ -230,9 +696,8 @@ public class WebServer extends NanoHTTPD {
                         "{\"error\":\"Invalid port range (1-65535)\"}");
             }
 
-            SharedPreferences prefs = getPrefs();
-            prefs.edit().putInt(KEY_TARGET_PORT, port).apply();
-            Log.i(TAG, "Web API: Target port updated to " + port);
+            config().setTargetPort(port);
+            AppLog.i(TAG, "Web API: Target port updated to " + port);
 
             return newFixedLengthResponse(Response.Status.OK, "application/json",
                     "{\"success\":true,\"message\":\"Target port updated successfully to " + port + "\"}");
@@ -240,64 +705,148 @@ public class WebServer extends NanoHTTPD {
             return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json",
                     "{\"error\":\"Invalid port number\"}");
         } catch (Exception e) {
-            Log.e(TAG, "Web API: Set port error", e);
+            AppLog.e(TAG, "Web API: Set port error", e);
             return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json",
                     "{\"error\":\"" + e.getMessage() + "\"}");
         }
     }
 
-    private Response handleLogs() {
-        Process process = null;
-        try {
-            process = Runtime.getRuntime().exec(new String[]{"logcat", "-d", "-s", "ADBAutoEnable:*"});
+    private Response handleGetRetryPolicy() {
+        AppConfig config = config();
+        String json = "{\"policy\":" + RetryPolicy.load(config.prefs()).toJson()
+                + ",\"history\":" + config.getRetryHistory() + "}";
+        return newFixedLengthResponse(Response.Status.OK, "application/json", json);
+    }
 
-            StringBuilder logs = new StringBuilder();
-            try (InputStreamReader isr = new InputStreamReader(process.getInputStream());
-                 BufferedReader reader = new BufferedReader(isr)) {
+    private Response handleSetRetryPolicy(IHTTPSession session) {
+        try {
+            Map<String, String> files = new HashMap<>();
+            session.parseBody(files);
+            Map<String, List<String>> params = session.getParameters();
 
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    logs.append(line).append("\n");
-                }
+            SharedPreferences prefs = config().prefs();
+            RetryPolicy current = RetryPolicy.load(prefs);
+            RetryPolicy updated = new RetryPolicy(
+                    intParam(params, "maxAttempts", current.maxAttempts),
+                    longParam(params, "baseDelayMs", current.baseDelayMs),
+                    longParam(params, "maxDelayMs", current.maxDelayMs),
+                    params.containsKey("jitter") ? Float.parseFloat(params.get("jitter").get(0)) : current.jitter,
+                    longParam(params, "totalBudgetMs", current.totalBudgetMs),
+                    longParam(params, "switchBudgetMs", current.switchBudgetMs),
+                    longParam(params, "scanBudgetMs", current.scanBudgetMs));
+
+            String error = updated.validate();
+            if (error != null) {
+                return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json",
+                        "{\"error\":\"" + error + "\"}");
             }
 
-            process.waitFor();
+            updated.save(prefs);
+            AppLog.i(TAG, "Web API: Retry policy updated to " + updated.toJson());
+            return newFixedLengthResponse(Response.Status.OK, "application/json",
+                    "{\"success\":true,\"policy\":" + updated.toJson() + "}");
+        } catch (NumberFormatException e) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json",
+                    "{\"error\":\"Invalid number\"}");
+        } catch (Exception e) {
+            AppLog.e(TAG, "Web API: Set retry policy error", e);
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json",
+                    "{\"error\":\"" + e.getMessage() + "\"}");
+        }
+    }
+
+    // Integer.parseInt rejects out-of-range values instead of letting a cast wrap them into valid ones
+    private static int intParam(Map<String, List<String>> params, String name, int fallback) {
+        List<String> values = params.get(name);
+        return (values != null && !values.isEmpty()) ? Integer.parseInt(values.get(0)) : fallback;
+    }
+
+    private static long longParam(Map<String, List<String>> params, String name, long fallback) {
+        List<String> values = params.get(name);
+        return (values != null && !values.isEmpty()) ? Long.parseLong(values.get(0)) : fallback;
+    }
 
-            String logsText = logs.toString();
-            if (logsText.isEmpty()) {
-                logsText = "No logs found for ADBAutoEnable";
+    /**
+     * GET /api/logs?since=&lt;seq&gt; returns buffered entries newer than {@code since} (all if absent)
+     * and the cursor for the next call.
+     */
+    private Response handleLogs(IHTTPSession session) {
+        long since = 0;
+        List<String> sinceList = session.getParameters().get("since");
+        if (sinceList != null && !sinceList.isEmpty()) {
+            try {
+                since = Long.parseLong(sinceList.get(0));
+            } catch (NumberFormatException e) {
+                return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json",
+                        "{\"error\":\"Invalid since\"}");
             }
+        }
 
-            logsText = logsText.replace("\\", "\\\\")
-                    .replace("\"", "\\\"")
-                    .replace("\n", "\\n")
-                    .replace("\r", "\\r")
-                    .replace("\t", "\\t");
+        StringBuilder json = new StringBuilder("{\"entries\":[");
+        long next = AppLog.appendSince(since, json);
+        json.append("],\"next\":").append(next).append('}');
+        return newFixedLengthResponse(Response.Status.OK, "application/json", json.toString());
+    }
 
-            return newFixedLengthResponse(Response.Status.OK, "application/json",
-                    "{\"logs\":\"" + logsText + "\"}");
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to read logs", e);
-            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json",
-                    "{\"error\":\"Failed to read logs: " + e.getMessage() + "\"}");
-        } finally {
-            if (process != null) {
-                process.destroy();
+    /**
+     * GET /api/events is a Server-Sent Events stream of {@code status} documents (the current one
+     * first, then on every change), {@code job} updates and app {@code log} entries.
+     */
+    private Response handleEvents(IHTTPSession session) {
+        StringBuilder preamble = new StringBuilder();
+        SseRing.appendEvent(preamble, -1, "status", statusProber.getSnapshot().json);
+        // A fresh client gets the current status instead of replaying stale ones; reconnects resume.
+        // An id ahead of the ring predates a web server restart and is treated like a fresh client.
+        long lastEventId = lastEventId(session);
+        boolean resumable = lastEventId > 0 && lastEventId <= events.getLastId();
+        InputStream stream = events.subscribe(resumable ? lastEventId : events.getLastId(), preamble.toString());
+        if (stream == null) {
+            return newFixedLengthResponse(Response.Status.SERVICE_UNAVAILABLE, "application/json",
+                    "{\"error\":\"Too many event streams open\"}");
+        }
+        return newEventStreamResponse(stream);
+    }
+
+    /**
+     * GET /api/logcat/stream is a Server-Sent Events feed of adbd and app logcat lines, shared with
+     * every other open stream. Reconnecting clients resume from Last-Event-ID.
+     */
+    private Response handleLogcatStream(IHTTPSession session) {
+        InputStream stream = logcatTailer.subscribe(lastEventId(session));
+        if (stream == null) {
+            return newFixedLengthResponse(Response.Status.SERVICE_UNAVAILABLE, "application/json",
+                    "{\"error\":\"Too many logcat streams open\"}");
+        }
+        return newEventStreamResponse(stream);
+    }
+
+    private Response newEventStreamResponse(InputStream stream) {
+        Response response = newChunkedResponse(Response.Status.OK, "text/event-stream", stream);
+        response.addHeader("Cache-Control", "no-cache");
+        return response;
+    }
+
+    /** Last-Event-ID sent by a reconnecting EventSource, or 0. */
+    private static long lastEventId(IHTTPSession session) {
+        String header = session.getHeaders().get("last-event-id");
+        if (header != null) {
+            try {
+                return Long.parseLong(header.trim());
+            } catch (NumberFormatException e) {
+                AppLog.d(TAG, "Ignoring invalid Last-Event-ID: " + header);
             }
         }
+        return 0;
     }
 
     private Response handleReset() {
         try {
-            Log.i(TAG, "Web API: Resetting pairing status");
+            AppLog.i(TAG, "Web API: Resetting pairing status");
 
             //Clear permission cache on reset too
-            permissionCached = null;
+            statusProber.invalidatePermission();
 
-            SharedPreferences prefs = getPrefs();
-            prefs.edit()
-                    .putBoolean("is_paired", false)
-                    .apply();
+            config().setPaired(false);
 
             File keyDir = new File(context.getFilesDir(), "adb_key");
             File pubKeyFile = new File(context.getFilesDir(), "adb_key.pub");
@@ -307,745 +856,142 @@ public class WebServer extends NanoHTTPD {
             boolean deleted2 = pubKeyFile.delete();
             boolean deleted3 = certFile.delete();
 
-            Log.i(TAG, "Deleted adb_key: " + deleted1);
-            Log.i(TAG, "Deleted adb_key.pub: " + deleted2);
-            Log.i(TAG, "Deleted adb_cert: " + deleted3);
+            AppLog.i(TAG, "Deleted adb_key: " + deleted1);
+            AppLog.i(TAG, "Deleted adb_key.pub: " + deleted2);
+            AppLog.i(TAG, "Deleted adb_cert: " + deleted3);
 
-            Log.i(TAG, "Pairing reset successful");
+            AppLog.i(TAG, "Pairing reset successful");
             return newFixedLengthResponse(Response.Status.OK, "application/json",
                     "{\"success\":true,\"message\":\"Pairing reset successful. Please pair again.\"}");
 
         } catch (Exception e) {
-            Log.e(TAG, "Web API: Reset error", e);
+            AppLog.e(TAG, "Web API: Reset error", e);
             return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json",
                     "{\"error\":\"" + e.getMessage() + "\"}");
         }
     }
 
-    private boolean checkTargetPortAvailable() {
-        String deviceIP = getDeviceIP();
-        int targetPort = getTargetPort();
-
-        // Check device IP first (fixes Chromecast/TV devices that don't expose loopback)
-        if (!deviceIP.equals("127.0.0.1") && checkSocket(deviceIP, targetPort)) {
-            return true;
+    private Response handleTest() {
+        JobRegistry.Job job = jobRegistry.start(TaskExecutor.OP_BOOT);
+        if (job == null) {
+            return newFixedLengthResponse(Response.Status.SERVICE_UNAVAILABLE, "application/json",
+                    "{\"error\":\"Boot configuration is not available\"}");
         }
+        return jobStartedResponse(job, "Boot test started");
+    }
 
-        // Fallback to loopback
-        return checkSocket("127.0.0.1", targetPort);
+    private Response handleSwitch() {
+        JobRegistry.Job job = jobRegistry.submit(TaskExecutor.OP_SWITCH, this::runSwitch);
+        return jobStartedResponse(job, "Port switch started");
     }
 
-    private int getCurrentPort() {
-        int targetPort = getTargetPort();
-        String deviceIP = getDeviceIP();
+    private Response jobStartedResponse(JobRegistry.Job job, String message) {
+        return newFixedLengthResponse(Response.Status.OK, "application/json",
+                "{\"success\":true,\"jobId\":\"" + job.id + "\",\"jobUrl\":\"/api/jobs/" + job.id
+                        + "\",\"message\":\"" + message + " (job " + job.id + ")\"}");
+    }
 
-        // Check target port first
-        if (!deviceIP.equals("127.0.0.1") && checkSocket(deviceIP, targetPort)) {
-            return targetPort;
+    /**
+     * GET /api/jobs/{id} returns the job, POST /api/jobs/{id}/cancel interrupts it.
+     */
+    private Response handleJob(String path, Method method) {
+        boolean cancel = path.endsWith("/cancel");
+        String id = cancel ? path.substring(0, path.length() - "/cancel".length()) : path;
+        JobRegistry.Job job = jobRegistry.get(id);
+        if (job == null) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, "application/json",
+                    "{\"error\":\"No such job: " + id + "\"}");
         }
-        if (checkSocket("127.0.0.1", targetPort)) {
-            return targetPort;
+        if (!cancel) {
+            return newFixedLengthResponse(Response.Status.OK, "application/json", job.toJson());
         }
-
-        // Check last known successful port if different from target
-        SharedPreferences prefs = getPrefs();
-        int lastPort = prefs.getInt("last_port", -1);
-        if (lastPort > 0 && lastPort != targetPort) {
-            if (!deviceIP.equals("127.0.0.1") && checkSocket(deviceIP, lastPort)) {
-                return lastPort;
-            }
-            if (checkSocket("127.0.0.1", lastPort)) {
-                return lastPort;
-            }
+        if (method != Method.POST) {
+            return newFixedLengthResponse(Response.Status.METHOD_NOT_ALLOWED, "application/json",
+                    "{\"error\":\"Use POST to cancel a job\"}");
         }
-
-        return -1;
-    }
-
-    private boolean checkSocket(String host, int port) {
-        try (Socket socket = new Socket()) {
-            socket.connect(new InetSocketAddress(host, port), 300);
-            return true;
-        } catch (Exception e) {
-            return false;
+        if (!jobRegistry.cancel(id)) {
+            return newFixedLengthResponse(Response.Status.CONFLICT, "application/json",
+                    "{\"error\":\"Job " + id + " already finished\"}");
         }
+        return newFixedLengthResponse(Response.Status.OK, "application/json", job.toJson());
     }
 
-    private Response handleTest() {
-        new Thread(() -> {
-            BootReceiver receiver = new BootReceiver();
-            receiver.onReceive(context, new android.content.Intent(android.content.Intent.ACTION_BOOT_COMPLETED));
-        }).start();
-
-        return newFixedLengthResponse(Response.Status.OK, "application/json",
-                "{\"success\":true,\"message\":\"Boot test started. Check logs below for progress.\"}");
-    }
-
-    private Response handleSwitch() {
-        new Thread(() -> {
-            try {
-                Log.i(TAG, "Web API: Discovering ADB port...");
-                int port = discoverAdbPort();
-
-                if (port == -1) {
-                    Log.e(TAG, "Web API: Could not find ADB port");
-                    return;
-                }
-
-                String deviceIP = getDeviceIP();
-                int targetPort = getTargetPort();
-
-                Log.i(TAG, "Web API: Found ADB on port " + port + ", switching to target port " + targetPort + "...");
-
-                // Try loopback first, fall back to live device IP (Fixes #8)
-                boolean success = adbHelper.switchToPort("127.0.0.1", port, targetPort);
-                if (!success && !deviceIP.equals("127.0.0.1")) {
-                    Log.i(TAG, "Web API: Switch failed via loopback, retrying via " + deviceIP + "...");
-                    success = adbHelper.switchToPort(deviceIP, port, targetPort);
-                }
-
-                if (success) {
-                    Log.i(TAG, "Web API: Successfully switched to port " + targetPort);
-                } else {
-                    Log.e(TAG, "Web API: Failed to switch to port " + targetPort);
-                }
-
-            } catch (Exception e) {
-                Log.e(TAG, "Web API: Switch error", e);
+    /**
+     * Values shared by the operations of one request: the device IP is resolved once, and a port
+     * found by discovery is reused by a later switch instead of browsing mDNS again.
+     */
+    private final class SwitchContext {
+        private String deviceIP;
+        int discoveredPort = -1;
+        // Set by a "port" op, and by this request's own switch body once it starts running
+        boolean targetPortSet = false;
+        volatile boolean switchRan = false;
+
+        String deviceIP() {
+            if (deviceIP == null) {
+                deviceIP = getDeviceIP();
             }
+            return deviceIP;
+        }
 
-        }).start();
-
-        return newFixedLengthResponse(Response.Status.OK, "application/json",
-                "{\"success\":true,\"message\":\"Port switch started. Check logs below for status.\"}");
+        int discover() {
+            if (discoveredPort == -1) {
+                discoveredPort = MdnsDiscovery.findAdbPort(context, deviceIP(), MdnsDiscovery.DEFAULT_TIMEOUT_MS);
+            }
+            return discoveredPort;
+        }
     }
 
-    private int getTargetPort() {
-        return getPrefs().getInt(KEY_TARGET_PORT, 5555);
+    private String runSwitch(JobRegistry.Job job) throws Exception {
+        return runSwitch(job, new SwitchContext());
     }
 
-    private int discoverAdbPort() {
-        final int[] discoveredPort = {-1};
-        final CountDownLatch latch = new CountDownLatch(1);
-        String deviceIP = getDeviceIP();
-
-        Log.i(TAG, "Looking for mDNS service on device IP: " + deviceIP);
-
-        NsdManager nsdManager = (NsdManager) context.getSystemService(Context.NSD_SERVICE);
-        if (nsdManager == null) {
-            Log.e(TAG, "NsdManager not available");
-            return -1;
+    private String runSwitch(JobRegistry.Job job, SwitchContext switchContext) throws Exception {
+        int targetPort = getTargetPort();
+        job.update("checking target port", 10);
+        if (AdbHelper.checkFastPath(context, switchContext.deviceIP(), targetPort) != null) {
+            AppLog.i(TAG, "Web API: No switch needed");
+            return "ADB already on port " + targetPort;
         }
 
-        NsdManager.DiscoveryListener discoveryListener = new NsdManager.DiscoveryListener() {
-            @Override
-            public void onDiscoveryStarted(String serviceType) {
-                Log.i(TAG, "mDNS discovery started for " + serviceType);
-            }
+        AppLog.i(TAG, "Web API: Discovering ADB port...");
+        job.update("discovering", 30);
+        int port = switchContext.discover();
 
-            @Override
-            @SuppressWarnings("deprecation")
-            public void onServiceFound(NsdServiceInfo serviceInfo) {
-                Log.i(TAG, "Service found: " + serviceInfo.getServiceName());
-                nsdManager.resolveService(serviceInfo, new NsdManager.ResolveListener() {
-                    @Override
-                    public void onResolveFailed(NsdServiceInfo serviceInfo, int errorCode) {
-                        Log.e(TAG, "Resolve failed: " + errorCode);
-                    }
-
-                    @Override
-                    public void onServiceResolved(NsdServiceInfo serviceInfo) {
-                        if (serviceInfo.getHost() != null) {
-                            InetAddress hostAddress = serviceInfo.getHost();
-                            String host = hostAddress.getHostAddress();
-                            if (host == null) {
-                                Log.w(TAG, "Host address is null");
-                                return;
-                            }
-
-                            int port = serviceInfo.getPort();
-                            Log.i(TAG, "Host: " + host + ", Port: " + port);
-                            if (host.startsWith("127.") || host.equals("::1") ||
-                                    host.startsWith("192.168.") || host.startsWith("10.") ||
-                                    host.startsWith("172.") || host.startsWith("100.")) {
-                                if (host.equals(deviceIP)) {
-                                    Log.i(TAG, "Found matching device with IP: " + deviceIP + ", Port: " + port);
-                                    discoveredPort[0] = port;
-                                } else {
-                                    Log.w(TAG, "Skipping device with IP " + host + " (looking for " + deviceIP + ")");
-                                }
-                            }
-                        }
-                    }
-                });
-            }
-
-            @Override
-            public void onServiceLost(NsdServiceInfo serviceInfo) {
-                Log.i(TAG, "Service lost: " + serviceInfo.getServiceName());
-            }
+        if (port == -1) {
+            AppLog.e(TAG, "Web API: Could not find ADB port");
+            throw new Exception("Could not find ADB port");
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
 
-            @Override
-            public void onDiscoveryStopped(String serviceType) {
-                Log.i(TAG, "Discovery stopped: " + serviceType);
-            }
+        String deviceIP = switchContext.deviceIP();
 
-            @Override
-            public void onStartDiscoveryFailed(String serviceType, int errorCode) {
-                Log.e(TAG, "Discovery start failed: error " + errorCode);
-                latch.countDown();
-            }
+        AppLog.i(TAG, "Web API: Found ADB on port " + port + ", switching to target port " + targetPort + "...");
+        job.update("switching from " + port, 60);
 
-            @Override
-            public void onStopDiscoveryFailed(String serviceType, int errorCode) {
-                Log.e(TAG, "Discovery stop failed: error " + errorCode);
-            }
-        };
+        // Try loopback first, fall back to live device IP (Fixes #8)
+        boolean success = adbHelper.switchToPort("127.0.0.1", port, targetPort);
+        if (!success && !deviceIP.equals("127.0.0.1")) {
+            AppLog.i(TAG, "Web API: Switch failed via loopback, retrying via " + deviceIP + "...");
+            job.update("switching from " + port + " via " + deviceIP, 80);
+            success = adbHelper.switchToPort(deviceIP, port, targetPort);
+        }
 
-        try {
-            nsdManager.discoverServices(SERVICE_TYPE, NsdManager.PROTOCOL_DNS_SD, discoveryListener);
-            boolean found = latch.await(10, TimeUnit.SECONDS);
-            if (!found) {
-                Log.e(TAG, "mDNS discovery timed out after 10 seconds");
-                try {
-                    nsdManager.stopServiceDiscovery(discoveryListener);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error stopping discovery after timeout", e);
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "mDNS discovery error", e);
+        if (!success) {
+            AppLog.e(TAG, "Web API: Failed to switch to port " + targetPort);
+            throw new Exception("Failed to switch from port " + port + " to " + targetPort);
         }
+        AppLog.i(TAG, "Web API: Successfully switched to port " + targetPort);
+        return "Switched from port " + port + " to " + targetPort;
+    }
 
-        return discoveredPort[0];
+    private int getTargetPort() {
+        return config().getTargetPort();
     }
 
     private String getDeviceIP() {
         return NetworkUtils.getLiveDeviceIP(context);
     }
-
-    private String getHTML() {
-        String deviceIP = getDeviceIP();
-        return "<!DOCTYPE html>\n" +
-                "<html>\n" +
-                "<head>\n" +
-                "    <meta charset=\"UTF-8\">\n" +
-                "    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n" +
-                "    <title>ADB Auto-Enable Configuration</title>\n" +
-                "    <style>\n" +
-                "        body { font-family: Arial, sans-serif; max-width: 800px; margin: 20px auto; padding: 20px; background: #f5f5f5; }\n" +
-                "        .status-bar { position: sticky; top: 0; z-index: 1000; background: #2196F3; color: white; padding: 12px 20px; border-radius: 6px; margin-bottom: 20px; display: flex; align-items: center; box-shadow: 0 4px 6px rgba(0,0,0,0.15); transition: background 0.3s; }\n" +
-                "        .status-bar.success { background: #4CAF50; }\n" +
-                "        .status-bar.error { background: #f44336; }\n" +
-                "        .spinner { width: 18px; height: 18px; border: 3px solid rgba(255,255,255,0.3); border-top: 3px solid white; border-radius: 50%; animation: spin 0.8s linear infinite; margin-right: 12px; flex-shrink: 0; display: none; }\n" +
-                "        @keyframes spin { 0% { transform: rotate(0deg); } 100% { transform: rotate(360deg); } }\n" +
-                "        .card { background: white; border-radius: 8px; padding: 20px; margin-bottom: 20px; box-shadow: 0 2px 4px rgba(0,0,0,0.1); }\n" +
-                "        h1 { color: #333; margin-top: 0; }\n" +
-                "        h2 { color: #666; font-size: 18px; border-bottom: 2px solid #4CAF50; padding-bottom: 10px; }\n" +
-                "        button { background: #4CAF50; color: white; border: none; padding: 12px 24px; font-size: 16px; border-radius: 4px; cursor: pointer; margin: 5px; }\n" +
-                "        button:hover { opacity: 0.9; }\n" +
-                "        button.secondary { background: #2196F3; }\n" +
-                "        button.warning { background: #ff9800; }\n" +
-                "        button.danger { background: #f44336; }\n" +
-                "        input { padding: 10px; font-size: 14px; border: 1px solid #ddd; border-radius: 4px; width: 200px; margin: 5px; }\n" +
-                "        .status { padding: 8px; border-radius: 4px; margin: 5px 0; }\n" +
-                "        .status.good { background: #d4edda; color: #155724; }\n" +
-                "        .status.bad { background: #f8d7da; color: #721c24; }\n" +
-                "        code { background: #f4f4f4; padding: 2px 6px; border-radius: 3px; font-family: monospace; display: block; margin: 10px 0; white-space: pre-wrap; word-break: break-all; }\n" +
-                "        .instruction { background: #e3f2fd; padding: 15px; border-radius: 4px; margin: 10px 0; }\n" +
-                "        .success { background: #d4edda; color: #155724; padding: 10px; border-radius: 4px; margin: 10px 0; display: none; }\n" +
-                "        .error { background: #f8d7da; color: #721c24; padding: 10px; border-radius: 4px; margin: 10px 0; display: none; }\n" +
-                "        .info { background: #d1ecf1; color: #0c5460; padding: 10px; border-radius: 4px; margin: 10px 0; display: none; }\n" +
-                "        .status-row { display: flex; justify-content: space-between; align-items: center; padding: 8px 0; border-bottom: 1px solid #eee; }\n" +
-                "        .status-row:last-child { border-bottom: none; }\n" +
-                "        .status-label { font-weight: bold; color: #666; min-width: 150px; }\n" +
-                "        .status-value { flex: 1; text-align: right; }\n" +
-                "        #logs-container { background: #1e1e1e; color: #d4d4d4; font-family: 'Courier New', monospace; font-size: 12px; padding: 15px; border-radius: 4px; max-height: 400px; overflow-y: auto; white-space: pre-wrap; word-break: break-all; user-select: text; }\n" +
-                "        .logs-controls { margin-bottom: 10px; }\n" +
-                "        .paused { background: #ff9800; color: white; padding: 5px 10px; border-radius: 3px; font-size: 12px; margin-left: 10px; }\n" +
-                "    </style>\n" +
-                "</head>\n" +
-                "<body>\n" +
-                "    <div id=\"top-status-bar\" class=\"status-bar success\">\n" +
-                "        <div class=\"spinner\" id=\"status-spinner\"></div>\n" +
-                "        <span id=\"status-text\">System Ready</span>\n" +
-                "    </div>\n" +
-                "\n" +
-                "    <h1>🔧 ADB Auto-Enable Configuration</h1>\n" +
-                "    \n" +
-                "    <div class=\"card\">\n" +
-                "        <h2>📊 System Status</h2>\n" +
-                "        <div id=\"status-display\">\n" +
-                "            <div class=\"status-row\">\n" +
-                "                <div class=\"status-label\">Permission:</div>\n" +
-                "                <div class=\"status-value\" id=\"permission-status\">Loading...</div>\n" +
-                "            </div>\n" +
-                "            <div class=\"status-row\">\n" +
-                "                <div class=\"status-label\">Pairing Status:</div>\n" +
-                "                <div class=\"status-value\" id=\"pairing-status\">Loading...</div>\n" +
-                "            </div>\n" +
-                "            <div class=\"status-row\">\n" +
-                "                <div class=\"status-label\">ADB Target Port:</div>\n" +
-                "                <div class=\"status-value\" id=\"port-status\">Loading...</div>\n" +
-                "            </div>\n" +
-                "            <div class=\"status-row\">\n" +
-                "                <div class=\"status-label\">Device IP:</div>\n" +
-                "                <div class=\"status-value\">" + deviceIP + "</div>\n" +
-                "            </div>\n" +
-                "            <div class=\"status-row\">\n" +
-                "                <div class=\"status-label\">Last Boot Status:</div>\n" +
-                "                <div class=\"status-value\" id=\"last-status\">Loading...</div>\n" +
-                "            </div>\n" +
-                "            <div class=\"status-row\">\n" +
-                "                <div class=\"status-label\">Current Port:</div>\n" +
-                "                <div class=\"status-value\" id=\"current-port\">Loading...</div>\n" +
-                "            </div>\n" +
-                "        </div>\n" +
-                "        <button onclick=\"refreshStatus()\">🔄 Refresh Status</button>\n" +
-                "    </div>\n" +
-                "    \n" +
-                "    <div class=\"card\" id=\"pairing-card\">\n" +
-                "        <h2>🔐 Initial Pairing (One-Time Setup)</h2>\n" +
-                "        <div class=\"instruction\">\n" +
-                "            <strong>Step 1:</strong> On your Android device, go to:<br>\n" +
-                "            <strong>Settings → Developer Options → Wireless Debugging</strong><br>\n" +
-                "            Tap <strong>\"Pair device with pairing code\"</strong><br><br>\n" +
-                "            <strong>Step 2:</strong> Copy the pairing code and port shown and enter them below:<br>\n" +
-                "        </div>\n" +
-                "        <div>\n" +
-                "            <input type=\"text\" id=\"pair-code\" placeholder=\"Pairing Code\" />\n" +
-                "            <input type=\"number\" id=\"pair-port\" placeholder=\"Pairing Port\" />\n" +
-                "            <button onclick=\"pairDevice()\">🔗 Pair Device</button>\n" +
-                "        </div>\n" +
-                "        <div id=\"pair-success\" class=\"success\"></div>\n" +
-                "        <div id=\"pair-error\" class=\"error\"></div>\n" +
-                "        <p><em>After pairing, the app will attempt to automatically grant itself permissions. Check the status above to verify.</em></p>\n" +
-                "    </div>\n" +
-                "    \n" +
-                "    <div class=\"card\" id=\"paired-card\" style=\"display:none\">\n" +
-                "        <h2>✅ Device Paired</h2>\n" +
-                "        <p>Your device is successfully paired and ready to use!</p>\n" +
-                "        <button onclick=\"resetPairing()\" class=\"danger\">🔄 Reset Pairing</button>\n" +
-                "        <div id=\"reset-success\" class=\"success\"></div>\n" +
-                "        <div id=\"reset-error\" class=\"error\"></div>\n" +
-                "    </div>\n" +
-                "    \n" +
-                "    <div class=\"card\" id=\"port-config-card\">\n" +
-                "        <h2>⚙️ Target Port Configuration</h2>\n" +
-                "        <div class=\"instruction\">\n" +
-                "            Configure the target TCP port and switch immediately:\n" +
-                "        </div>\n" +
-                "        <div>\n" +
-                "            <input type=\"number\" id=\"target-port-input\" placeholder=\"Target Port\" />\n" +
-                "            <button onclick=\"saveTargetPort()\" class=\"secondary\">💾 Save Port</button>\n" +
-                "            <button onclick=\"saveAndSwitchPort()\" class=\"warning\">💾 Save & Switch</button>\n" +
-                "        </div>\n" +
-                "        <div id=\"port-success\" class=\"success\"></div>\n" +
-                "        <div id=\"port-error\" class=\"error\"></div>\n" +
-                "    </div>\n" +
-                "    \n" +
-                "    <div class=\"card\" id=\"switch-card\">\n" +
-                "        <h2>🔄 Switch Target Port</h2>\n" +
-                "        <div class=\"instruction\">\n" +
-                "            After pairing and enabling wireless debugging, switch ADB to your target port:\n" +
-                "        </div>\n" +
-                "        <button onclick=\"switchPort()\">🔀 Switch Target Port Now</button>\n" +
-                "        <div id=\"switch-info\" class=\"info\"></div>\n" +
-                "    </div>\n" +
-                "    \n" +
-                "    <div class=\"card\">\n" +
-                "        <h2>🌐 Web Interface Control</h2>\n" +
-                "        <div class=\"instruction\">\n" +
-                "            Disable the web server to run completely silent on future boots and reduce resource usage:\n" +
-                "        </div>\n" +
-                "        <button onclick=\"toggleWebServer(false)\" class=\"danger\">🛑 Disable Web Server</button>\n" +
-                "        <button onclick=\"toggleWebServer(true)\" class=\"secondary\">🟢 Enable Web Server</button>\n" +
-                "        <div id=\"web-server-success\" class=\"success\"></div>\n" +
-                "        <div id=\"web-server-error\" class=\"error\"></div>\n" +
-                "    </div>\n" +
-                "\n" +
-                "    <div class=\"card\">\n" +
-                "        <h2>🧪 Testing</h2>\n" +
-                "        <div class=\"instruction\">\n" +
-                "            Test the full boot configuration sequence:\n" +
-                "        </div>\n" +
-                "        <button onclick=\"runTest()\">▶️ Run Test Now</button>\n" +
-                "        <div id=\"test-info\" class=\"info\"></div>\n" +
-                "    </div>\n" +
-                "    \n" +
-                "    <div class=\"card\">\n" +
-                "        <h2>📋 Live Logs</h2>\n" +
-                "        <div class=\"logs-controls\">\n" +
-                "            <button onclick=\"copyLogs()\" class=\"secondary\">📋 Copy to Clipboard</button>\n" +
-                "            <span id=\"paused-indicator\" class=\"paused\" style=\"display:none\">Auto-refresh paused</span>\n" +
-                "        </div>\n" +
-                "        <div id=\"logs-container\">Loading logs...</div>\n" +
-                "    </div>\n" +
-                "    \n" +
-                "    <script>\n" +
-                "        let autoRefreshPaused = false;\n" +
-                "        let logsRefreshInterval;\n" +
-                "        \n" +
-                "        function showActivity(text) {\n" +
-                "            const bar = document.getElementById('top-status-bar');\n" +
-                "            const spinner = document.getElementById('status-spinner');\n" +
-                "            const textEl = document.getElementById('status-text');\n" +
-                "            bar.className = 'status-bar';\n" +
-                "            spinner.style.display = 'block';\n" +
-                "            textEl.textContent = text;\n" +
-                "        }\n" +
-                "        \n" +
-                "        function showResult(text, isSuccess) {\n" +
-                "            const bar = document.getElementById('top-status-bar');\n" +
-                "            const spinner = document.getElementById('status-spinner');\n" +
-                "            const textEl = document.getElementById('status-text');\n" +
-                "            bar.className = 'status-bar ' + (isSuccess ? 'success' : 'error');\n" +
-                "            spinner.style.display = 'none';\n" +
-                "            textEl.textContent = text;\n" +
-                "        }\n" +
-                "        \n" +
-                "        function refreshStatus() {\n" +
-                "            fetch('/api/status')\n" +
-                "                .then(r => r.json())\n" +
-                "                .then(data => {\n" +
-                "                    document.getElementById('permission-status').innerHTML = data.hasPermission ? \n" +
-                "                        '<span class=\"status good\">✓ Granted</span>' : \n" +
-                "                        '<span class=\"status bad\">✗ Not granted</span>';\n" +
-                "                    document.getElementById('pairing-status').innerHTML = data.isPaired ? \n" +
-                "                        '<span class=\"status good\">✓ Paired</span>' : \n" +
-                "                        '<span class=\"status bad\">✗ Not paired</span>';\n" +
-                "                    document.getElementById('port-status').innerHTML = data.adb5555Available ? \n" +
-                "                        '<span class=\"status good\">✓ Available</span>' : \n" +
-                "                        '<span class=\"status bad\">✗ Not available</span>';\n" +
-                "                    document.getElementById('last-status').textContent = data.lastStatus;\n" +
-                "                    document.getElementById('current-port').textContent = (data.currentPort === -1) ? 'NONE' : data.currentPort;\n" +
-                "                    \n" +
-                "                    const portInput = document.getElementById('target-port-input');\n" +
-                "                    if (document.activeElement !== portInput) {\n" +
-                "                        portInput.value = data.targetPort;\n" +
-                "                    }\n" +
-                "                    \n" +
-                "                    if (data.isPaired) {\n" +
-                "                        document.getElementById('pairing-card').style.display = 'none';\n" +
-                "                        document.getElementById('paired-card').style.display = 'block';\n" +
-                "                    } else {\n" +
-                "                        document.getElementById('pairing-card').style.display = 'block';\n" +
-                "                        document.getElementById('paired-card').style.display = 'none';\n" +
-                "                    }\n" +
-                "                    \n" +
-                "                    if (data.adb5555Available) {\n" +
-                "                        document.getElementById('switch-card').style.display = 'none';\n" +
-                "                    } else {\n" +
-                "                        document.getElementById('switch-card').style.display = 'block';\n" +
-                "                    }\n" +
-                "                });\n" +
-                "        }\n" +
-                "        \n" +
-                "        function saveTargetPort() {\n" +
-                "            const port = document.getElementById('target-port-input').value;\n" +
-                "            const successDiv = document.getElementById('port-success');\n" +
-                "            const errorDiv = document.getElementById('port-error');\n" +
-                "            \n" +
-                "            successDiv.style.display = 'none';\n" +
-                "            errorDiv.style.display = 'none';\n" +
-                "            showActivity('Saving target port...');\n" +
-                "            \n" +
-                "            fetch('/api/port', {\n" +
-                "                method: 'POST',\n" +
-                "                headers: {'Content-Type': 'application/x-www-form-urlencoded'},\n" +
-                "                body: 'port=' + port\n" +
-                "            })\n" +
-                "            .then(r => r.json())\n" +
-                "            .then(data => {\n" +
-                "                if (data.success) {\n" +
-                "                    successDiv.textContent = data.message;\n" +
-                "                    successDiv.style.display = 'block';\n" +
-                "                    showResult(data.message, true);\n" +
-                "                    setTimeout(() => { successDiv.style.display = 'none'; }, 3000);\n" +
-                "                    refreshStatus();\n" +
-                "                } else {\n" +
-                "                    errorDiv.textContent = data.error || 'Failed to update port';\n" +
-                "                    errorDiv.style.display = 'block';\n" +
-                "                    showResult(data.error || 'Failed to update port', false);\n" +
-                "                }\n" +
-                "            })\n" +
-                "            .catch(e => {\n" +
-                "                errorDiv.textContent = 'Error: ' + e.message;\n" +
-                "                errorDiv.style.display = 'block';\n" +
-                "                showResult('Error: ' + e.message, false);\n" +
-                "            });\n" +
-                "        }\n" +
-                "        \n" +
-                "        function saveAndSwitchPort() {\n" +
-                "            const port = document.getElementById('target-port-input').value;\n" +
-                "            const successDiv = document.getElementById('port-success');\n" +
-                "            const errorDiv = document.getElementById('port-error');\n" +
-                "            \n" +
-                "            successDiv.style.display = 'none';\n" +
-                "            errorDiv.style.display = 'none';\n" +
-                "            showActivity('Saving port and switching...');\n" +
-                "            \n" +
-                "            fetch('/api/port', {\n" +
-                "                method: 'POST',\n" +
-                "                headers: {'Content-Type': 'application/x-www-form-urlencoded'},\n" +
-                "                body: 'port=' + port\n" +
-                "            })\n" +
-                "            .then(r => r.json())\n" +
-                "            .then(data => {\n" +
-                "                if (data.success) {\n" +
-                "                    return fetch('/api/switch');\n" +
-                "                } else {\n" +
-                "                    throw new Error(data.error || 'Failed to update port');\n" +
-                "                }\n" +
-                "            })\n" +
-                "            .then(r => r.json())\n" +
-                "            .then(data => {\n" +
-                "                successDiv.textContent = 'Port saved and switch initiated! Check logs below.';\n" +
-                "                successDiv.style.display = 'block';\n" +
-                "                showResult('Port saved and switch initiated successfully!', true);\n" +
-                "                setTimeout(() => { successDiv.style.display = 'none'; }, 4000);\n" +
-                "                refreshStatus();\n" +
-                "                refreshLogs();\n" +
-                "            })\n" +
-                "            .catch(e => {\n" +
-                "                errorDiv.textContent = 'Error: ' + e.message;\n" +
-                "                errorDiv.style.display = 'block';\n" +
-                "                showResult('Error: ' + e.message, false);\n" +
-                "            });\n" +
-                "        }\n" +
-                "        \n" +
-                "        function toggleWebServer(enable) {\n" +
-                "            if (!enable && !confirm('Are you sure you want to disable the web server? Once disabled, you will need to restart the app or use another method to access configuration settings.')) {\n" +
-                "                return;\n" +
-                "            }\n" +
-                "            \n" +
-                "            const successDiv = document.getElementById('web-server-success');\n" +
-                "            const errorDiv = document.getElementById('web-server-error');\n" +
-                "            \n" +
-                "            successDiv.style.display = 'none';\n" +
-                "            errorDiv.style.display = 'none';\n" +
-                "            showActivity('Updating web server setting...');\n" +
-                "            \n" +
-                "            fetch('/api/webserver', {\n" +
-                "                method: 'POST',\n" +
-                "                headers: {'Content-Type': 'application/x-www-form-urlencoded'},\n" +
-                "                body: 'enabled=' + enable\n" +
-                "            })\n" +
-                "            .then(r => r.json())\n" +
-                "            .then(data => {\n" +
-                "                if (data.success) {\n" +
-                "                    successDiv.textContent = data.message;\n" +
-                "                    successDiv.style.display = 'block';\n" +
-                "                    showResult(data.message, true);\n" +
-                "                } else {\n" +
-                "                    errorDiv.textContent = data.error || 'Failed to update setting';\n" +
-                "                    errorDiv.style.display = 'block';\n" +
-                "                    showResult(data.error || 'Failed', false);\n" +
-                "                }\n" +
-                "            })\n" +
-                "            .catch(e => {\n" +
-                "                successDiv.textContent = 'Web server setting updated. If disabled, connection will close shortly.';\n" +
-                "                successDiv.style.display = 'block';\n" +
-                "                showResult('Web server setting updated', true);\n" +
-                "            });\n" +
-                "        }\n" +
-                "        \n" +
-                "        function refreshLogs() {\n" +
-                "            fetch('/api/logs')\n" +
-                "                .then(r => r.json())\n" +
-                "                .then(data => {\n" +
-                "                    const container = document.getElementById('logs-container');\n" +
-                "                    const wasScrolledToBottom = container.scrollHeight - container.clientHeight <= container.scrollTop + 1;\n" +
-                "                    container.textContent = data.logs || 'No logs available';\n" +
-                "                    if (wasScrolledToBottom) {\n" +
-                "                        container.scrollTop = container.scrollHeight;\n" +
-                "                    }\n" +
-                "                })\n" +
-                "                .catch(e => {\n" +
-                "                    document.getElementById('logs-container').textContent = 'Error loading logs: ' + e.message;\n" +
-                "                });\n" +
-                "        }\n" +
-                "        \n" +
-                "        function copyLogs() {\n" +
-                "            const logs = document.getElementById('logs-container').textContent;\n" +
-                "            \n" +
-                "            if (navigator.clipboard && navigator.clipboard.writeText) {\n" +
-                "                navigator.clipboard.writeText(logs).then(() => {\n" +
-                "                    const btn = event.target;\n" +
-                "                    const originalText = btn.textContent;\n" +
-                "                    btn.textContent = '✓ Copied!';\n" +
-                "                    setTimeout(() => { btn.textContent = originalText; }, 2000);\n" +
-                "                }).catch(e => {\n" +
-                "                    copyLogsViaTextarea(logs, event.target);\n" +
-                "                });\n" +
-                "            } else {\n" +
-                "                copyLogsViaTextarea(logs, event.target);\n" +
-                "            }\n" +
-                "        }\n" +
-                "        \n" +
-                "        function copyLogsViaTextarea(text, btn) {\n" +
-                "            const textarea = document.createElement('textarea');\n" +
-                "            textarea.value = text;\n" +
-                "            document.body.appendChild(textarea);\n" +
-                "            textarea.select();\n" +
-                "            document.execCommand('copy');\n" +
-                "            document.body.removeChild(textarea);\n" +
-                "            \n" +
-                "            const originalText = btn.textContent;\n" +
-                "            btn.textContent = '✓ Copied!';\n" +
-                "            setTimeout(() => { btn.textContent = originalText; }, 2000);\n" +
-                "        }\n" +
-                "        \n" +
-                "        function resetPairing() {\n" +
-                "            const successDiv = document.getElementById('reset-success');\n" +
-                "            const errorDiv = document.getElementById('reset-error');\n" +
-                "            \n" +
-                "            if (confirm('Are you sure you want to reset pairing? You will need to pair again.')) {\n" +
-                "                showActivity('Resetting pairing credentials...');\n" +
-                "                fetch('/api/reset', {\n" +
-                "                    method: 'POST'\n" +
-                "                })\n" +
-                "                .then(r => r.json())\n" +
-                "                .then(data => {\n" +
-                "                    if (data.success) {\n" +
-                "                        successDiv.textContent = data.message;\n" +
-                "                        successDiv.style.display = 'block';\n" +
-                "                        errorDiv.style.display = 'none';\n" +
-                "                        showResult(data.message, true);\n" +
-                "                        setTimeout(() => {\n" +
-                "                            successDiv.style.display = 'none';\n" +
-                "                            refreshStatus();\n" +
-                "                        }, 3000);\n" +
-                "                    } else {\n" +
-                "                        errorDiv.textContent = 'Reset failed: ' + (data.error || 'Unknown error');\n" +
-                "                        errorDiv.style.display = 'block';\n" +
-                "                        successDiv.style.display = 'none';\n" +
-                "                        showResult('Reset failed', false);\n" +
-                "                    }\n" +
-                "                })\n" +
-                "                .catch(e => {\n" +
-                "                    errorDiv.textContent = 'Error: ' + e.message;\n" +
-                "                    errorDiv.style.display = 'block';\n" +
-                "                    successDiv.style.display = 'none';\n" +
-                "                    showResult('Error: ' + e.message, false);\n" +
-                "                });\n" +
-                "            }\n" +
-                "        }\n" +
-                "        \n" +
-                "        function pairDevice() {\n" +
-                "            const port = document.getElementById('pair-port').value;\n" +
-                "            const code = document.getElementById('pair-code').value;\n" +
-                "            const successDiv = document.getElementById('pair-success');\n" +
-                "            const errorDiv = document.getElementById('pair-error');\n" +
-                "            \n" +
-                "            successDiv.style.display = 'none';\n" +
-                "            errorDiv.style.display = 'none';\n" +
-                "            showActivity('Pairing device and requesting self-grant permissions...');\n" +
-                "            \n" +
-                "            fetch('/api/pair', {\n" +
-                "                method: 'POST',\n" +
-                "                headers: {'Content-Type': 'application/x-www-form-urlencoded'},\n" +
-                "                body: 'port=' + port + '&code=' + code\n" +
-                "            })\n" +
-                "            .then(r => r.json())\n" +
-                "            .then(data => {\n" +
-                "                if (data.success) {\n" +
-                "                    successDiv.textContent = data.message;\n" +
-                "                    successDiv.style.display = 'block';\n" +
-                "                    showResult(data.message, true);\n" +
-                "                    setTimeout(refreshStatus, 2000);\n" +
-                "                } else {\n" +
-                "                    errorDiv.textContent = data.error || 'Pairing failed';\n" +
-                "                    errorDiv.style.display = 'block';\n" +
-                "                    showResult(data.error || 'Pairing failed', false);\n" +
-                "                }\n" +
-                "            })\n" +
-                "            .catch(e => {\n" +
-                "                errorDiv.textContent = 'Error: ' + e.message;\n" +
-                "                errorDiv.style.display = 'block';\n" +
-                "                showResult('Error: ' + e.message, false);\n" +
-                "            });\n" +
-                "        }\n" +
-                "        \n" +
-                "        function switchPort() {\n" +
-                "            const infoDiv = document.getElementById('switch-info');\n" +
-                "            showActivity('Switching ADB target port...');\n" +
-                "            \n" +
-                "            fetch('/api/switch')\n" +
-                "                .then(r => r.json())\n" +
-                "                .then(data => {\n" +
-                "                    infoDiv.textContent = data.message;\n" +
-                "                    infoDiv.style.display = 'block';\n" +
-                "                    showResult('Port switch initiated successfully!', true);\n" +
-                "                    setTimeout(() => {\n" +
-                "                        infoDiv.style.display = 'none';\n" +
-                "                        refreshStatus();\n" +
-                "                        refreshLogs();\n" +
-                "                    }, 5000);\n" +
-                "                })\n" +
-                "                .catch(e => {\n" +
-                "                    showResult('Switch failed: ' + e.message, false);\n" +
-                "                });\n" +
-                "        }\n" +
-                "        \n" +
-                "        function runTest() {\n" +
-                "            const infoDiv = document.getElementById('test-info');\n" +
-                "            showActivity('Running boot configuration test...');\n" +
-                "            \n" +
-                "            fetch('/api/test')\n" +
-                "                .then(r => r.json())\n" +
-                "                .then(data => {\n" +
-                "                    infoDiv.textContent = data.message;\n" +
-                "                    infoDiv.style.display = 'block';\n" +
-                "                    showResult('Test sequence started successfully!', true);\n" +
-                "                    setTimeout(() => {\n" +
-                "                        infoDiv.style.display = 'none';\n" +
-                "                        refreshLogs();\n" +
-                "                    }, 3000);\n" +
-                "                })\n" +
-                "                .catch(e => {\n" +
-                "                    showResult('Test failed: ' + e.message, false);\n" +
-                "                });\n" +
-                "        }\n" +
-                "        \n" +
-                "        document.addEventListener('DOMContentLoaded', function() {\n" +
-                "            const logsContainer = document.getElementById('logs-container');\n" +
-                "            const pausedIndicator = document.getElementById('paused-indicator');\n" +
-                "            \n" +
-                "            logsContainer.addEventListener('mousedown', function() {\n" +
-                "                autoRefreshPaused = true;\n" +
-                "                pausedIndicator.style.display = 'inline';\n" +
-                "                clearInterval(logsRefreshInterval);\n" +
-                "            });\n" +
-                "            \n" +
-                "            document.addEventListener('mouseup', function() {\n" +
-                "                setTimeout(() => {\n" +
-                "                    if (window.getSelection().toString().length === 0) {\n" +
-                "                        autoRefreshPaused = false;\n" +
-                "                        pausedIndicator.style.display = 'none';\n" +
-                "                        startLogsAutoRefresh();\n" +
-                "                    }\n" +
-                "                }, 100);\n" +
-                "            });\n" +
-                "        });\n" +
-                "        \n" +
-                "        function startLogsAutoRefresh() {\n" +
-                "            if (!autoRefreshPaused) {\n" +
-                "                logsRefreshInterval = setInterval(() => {\n" +
-                "                    if (!autoRefreshPaused) {\n" +
-                "                        refreshLogs();\n" +
-                "                    }\n" +
-                "                }, 3000);\n" +
-                "            }\n" +
-                "        }\n" +
-                "        \n" +
-                "        refreshStatus();\n" +
-                "        refreshLogs();\n" +
-                "        \n" +
-                "        setInterval(refreshStatus, 5000);\n" +
-                "        startLogsAutoRefresh();\n" +
-                "    </script>\n" +
-                "</body>\n" +
-                "</html>";
-    }
 }
@@ -0,0 +1,103 @@
+package com.tpn.adbautoenable;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * AppLog is process-wide, so these tests only reason about entries they wrote, relative to the
+ * sequence number current when they started.
+ */
+public class AppLogTest {
+    private static final String TAG = "AppLogTest";
+
+    @After
+    public void tearDown() {
+        AppLog.setListener(null);
+    }
+
+    private static int count(String haystack, String needle) {
+        int count = 0;
+        for (int i = haystack.indexOf(needle); i >= 0; i = haystack.indexOf(needle, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void appendSinceReturnsOnlyNewEntriesInOrder() {
+        long cursor = AppLog.nextSeq() - 1;
+        AppLog.i(TAG, "cursor-one");
+        AppLog.w(TAG, "cursor-two");
+        AppLog.e(TAG, "cursor-three");
+
+        StringBuilder out = new StringBuilder();
+        long next = AppLog.appendSince(cursor, out);
+        String json = out.toString();
+        assertTrue(next >= cursor + 3);
+        assertTrue(json, json.startsWith("{\"seq\":" + (cursor + 1) + ","));
+        assertTrue(json.indexOf("cursor-one") < json.indexOf("cursor-two"));
+        assertTrue(json.indexOf("cursor-two") < json.indexOf("cursor-three"));
+        assertTrue(json.contains("\"level\":\"W\",\"message\":\"cursor-two\""));
+
+        StringBuilder again = new StringBuilder();
+        assertTrue(AppLog.appendSince(next, again) >= next);
+        assertFalse(again.toString().contains("cursor-"));
+    }
+
+    @Test
+    public void throwableIsAppendedToMessage() {
+        long cursor = AppLog.nextSeq() - 1;
+        AppLog.e(TAG, "connect failed", new java.io.IOException("refused"));
+        StringBuilder out = new StringBuilder();
+        AppLog.appendSince(cursor, out);
+        assertTrue(out.toString(), out.toString().contains("connect failed: java.io.IOException: refused"));
+    }
+
+    @Test
+    public void readerThatFellALapBehindGetsTheLastCapacityEntries() {
+        long cursor = AppLog.nextSeq() - 1;
+        for (int i = 0; i < AppLog.CAPACITY + 10; i++) {
+            AppLog.d(TAG, "wrap-" + i);
+        }
+
+        StringBuilder out = new StringBuilder();
+        long next = AppLog.appendSince(cursor, out);
+        String json = out.toString();
+        assertEquals(AppLog.CAPACITY, count(json, "{\"seq\":"));
+        assertTrue(json, json.startsWith("{\"seq\":" + (next + 1 - AppLog.CAPACITY) + ","));
+        assertFalse(json.contains("\"wrap-9\""));
+        assertTrue(json.contains("\"wrap-10\""));
+        assertTrue(json.contains("\"wrap-" + (AppLog.CAPACITY + 9) + "\""));
+    }
+
+    @Test
+    public void escapeJsonHandlesQuotesAndControlCharacters() {
+        StringBuilder out = new StringBuilder();
+        AppLog.escapeJson("say \"hi\"\\\n\r\t\u0001", out);
+        assertEquals("say \\\"hi\\\"\\\\\\n\\r\\t\\u0001", out.toString());
+    }
+
+    @Test
+    public void listenerSeesEveryNewEntry() {
+        List<AppLog.Entry> seen = new ArrayList<>();
+        AppLog.setListener(entry -> {
+            if (TAG.equals(entry.tag)) {
+                seen.add(entry);
+            }
+        });
+        AppLog.i(TAG, "heard");
+        AppLog.setListener(null);
+        AppLog.i(TAG, "not heard");
+
+        assertEquals(1, seen.size());
+        assertEquals('I', seen.get(0).level);
+        assertEquals("heard", seen.get(0).message);
+    }
+}
@@ -0,0 +1,74 @@
+package com.tpn.adbautoenable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/** The limiter is created at elapsed-realtime 0 (SystemClock's default in JVM tests). */
+public class EndpointLimiterTest {
+
+    @Test
+    public void burstIsAdmittedThenLimited() {
+        EndpointLimiter limiter = new EndpointLimiter(1, 3, Integer.MAX_VALUE);
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(1, limiter.tryAcquire(0));
+        assertEquals("{\"inFlight\":3,\"maxInFlight\":2147483647,\"admitted\":3,\"limited\":1}",
+                limiter.toJson());
+    }
+
+    @Test
+    public void retryAfterReflectsTheRefillRate() {
+        // One token every 10 seconds
+        EndpointLimiter limiter = new EndpointLimiter(0.1, 1, Integer.MAX_VALUE);
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(10, limiter.tryAcquire(0));
+        assertEquals(5, limiter.tryAcquire(5000));
+        assertEquals(1, limiter.tryAcquire(9500));
+    }
+
+    @Test
+    public void tokensRefillOverTimeUpToBurst() {
+        EndpointLimiter limiter = new EndpointLimiter(2, 2, Integer.MAX_VALUE);
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(1, limiter.tryAcquire(100));
+        assertEquals(0, limiter.tryAcquire(500));
+
+        // A long idle period only refills up to the burst
+        assertEquals(0, limiter.tryAcquire(60000));
+        assertEquals(0, limiter.tryAcquire(60000));
+        assertEquals(1, limiter.tryAcquire(60000));
+    }
+
+    @Test
+    public void inFlightCapHoldsUntilRelease() {
+        EndpointLimiter limiter = new EndpointLimiter(Double.POSITIVE_INFINITY, 1, 2);
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(1, limiter.tryAcquire(0));
+
+        limiter.release();
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals("{\"inFlight\":2,\"maxInFlight\":2,\"admitted\":3,\"limited\":1}", limiter.toJson());
+    }
+
+    @Test
+    public void infiniteRateNeverRunsOutOfTokens() {
+        EndpointLimiter limiter = new EndpointLimiter(Double.POSITIVE_INFINITY, 1, Integer.MAX_VALUE);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, limiter.tryAcquire(0));
+        }
+    }
+
+    @Test
+    public void rejectedRequestDoesNotSpendATokenOrSlot() {
+        EndpointLimiter limiter = new EndpointLimiter(1, 1, 1);
+        assertEquals(0, limiter.tryAcquire(0));
+        // In-flight cap rejects before touching the bucket
+        assertEquals(1, limiter.tryAcquire(2000));
+        limiter.release();
+        assertEquals(0, limiter.tryAcquire(2000));
+    }
+}
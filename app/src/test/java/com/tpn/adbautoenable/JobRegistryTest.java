@@ -0,0 +1,135 @@
+package com.tpn.adbautoenable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JobRegistryTest {
+    private static final long TIMEOUT_MS = 5000;
+
+    private TaskExecutor taskExecutor;
+    private JobRegistry registry;
+
+    @Before
+    public void setUp() {
+        taskExecutor = new TaskExecutor(8);
+        registry = new JobRegistry(taskExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        taskExecutor.shutdown();
+    }
+
+    private static void await(JobRegistry.Job job) throws InterruptedException {
+        assertTrue("job " + job.id + " did not finish", job.awaitFinish(TIMEOUT_MS));
+    }
+
+    @Test
+    public void sameTypeInFlightIsShared() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        JobRegistry.Job first = registry.submit("switch", job -> {
+            started.countDown();
+            release.await();
+            return "done";
+        });
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        JobRegistry.Job second = registry.submit("switch", job -> "never runs");
+        assertSame(first, second);
+
+        release.countDown();
+        await(first);
+        assertEquals(JobRegistry.State.SUCCEEDED, first.getState());
+        assertTrue(first.toJson().contains("\"result\":\"done\""));
+
+        JobRegistry.Job third = registry.submit("switch", job -> "again");
+        assertNotSame(first, third);
+        await(third);
+        assertEquals(JobRegistry.State.SUCCEEDED, third.getState());
+    }
+
+    @Test
+    public void differentTypesAreNotShared() throws Exception {
+        JobRegistry.Job a = registry.submit("boot", job -> "a");
+        JobRegistry.Job b = registry.submit("switch", job -> "b");
+        assertNotSame(a, b);
+        await(a);
+        await(b);
+    }
+
+    @Test
+    public void failingBodyReportsItsMessage() throws Exception {
+        JobRegistry.Job job = registry.submit("boot", j -> {
+            throw new IllegalStateException("Wireless debugging is off");
+        });
+        await(job);
+        assertEquals(JobRegistry.State.FAILED, job.getState());
+        assertTrue(job.toJson().contains("\"error\":\"Wireless debugging is off\""));
+    }
+
+    @Test
+    public void cancelInterruptsRunningJob() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        JobRegistry.Job job = registry.submit("switch", j -> {
+            started.countDown();
+            new CountDownLatch(1).await();
+            return "unreachable";
+        });
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        assertTrue(registry.cancel(job.id));
+        await(job);
+        assertEquals(JobRegistry.State.CANCELLED, job.getState());
+        assertFalse("finished jobs can't be cancelled", registry.cancel(job.id));
+        assertFalse(registry.cancel("no-such-job"));
+    }
+
+    @Test
+    public void startRunsDefinedBodyOnly() throws Exception {
+        assertNull(registry.start("boot"));
+        registry.define("boot", job -> {
+            job.update("configuring", 50);
+            return "configured";
+        });
+        JobRegistry.Job job = registry.start("boot");
+        assertNotNull(job);
+        await(job);
+        assertEquals(JobRegistry.State.SUCCEEDED, job.getState());
+        assertTrue(job.toJson().contains("\"progress\":100"));
+    }
+
+    @Test
+    public void oldestJobsAreEvictedPastTheLimit() throws Exception {
+        for (int i = 0; i < 55; i++) {
+            await(registry.submit("boot", job -> "ok"));
+        }
+        for (int id = 1; id <= 5; id++) {
+            assertNull("job " + id + " should be evicted", registry.get(Integer.toString(id)));
+        }
+        assertNotNull(registry.get("6"));
+        assertNotNull(registry.get("55"));
+    }
+
+    @Test
+    public void toJsonListsNewestFirst() throws Exception {
+        await(registry.submit("boot", job -> "first"));
+        await(registry.submit("switch", job -> "second"));
+        String json = registry.toJson();
+        assertTrue(json, json.startsWith("[{\"id\":\"2\""));
+        assertTrue(json, json.indexOf("\"id\":\"2\"") < json.indexOf("\"id\":\"1\""));
+        assertEquals("[]", new JobRegistry(taskExecutor).toJson());
+    }
+}
@@ -0,0 +1,118 @@
+package com.tpn.adbautoenable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** Metrics are process-wide, so these tests compare samples before and after recording. */
+public class MetricsTest {
+
+    /** Value of the sample whose name and labels are exactly {@code series}. */
+    private static double sample(String rendered, String series) {
+        for (String line : rendered.split("\n")) {
+            if (line.startsWith(series + " ")) {
+                return Double.parseDouble(line.substring(series.length() + 1));
+            }
+        }
+        fail("no sample " + series + " in:\n" + rendered);
+        return 0;
+    }
+
+    private static int count(String haystack, String needle) {
+        int count = 0;
+        for (int i = haystack.indexOf(needle); i >= 0; i = haystack.indexOf(needle, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void labelledCounterRendersOneSeriesPerValue() {
+        String ok = "adbautoenable_switches_total{result=\"ok\"}";
+        String failed = "adbautoenable_switches_total{result=\"failed\"}";
+        String before = Metrics.render();
+        Metrics.SWITCHES.get("ok").inc();
+        Metrics.SWITCHES.get("ok").inc();
+        Metrics.SWITCHES.get("failed").add(3);
+        String after = Metrics.render();
+
+        assertEquals(2, sample(after, ok) - sample(before, ok), 0);
+        assertEquals(3, sample(after, failed) - sample(before, failed), 0);
+        assertEquals(1, count(after, "# HELP adbautoenable_switches_total "));
+        assertEquals(1, count(after, "# TYPE adbautoenable_switches_total counter\n"));
+    }
+
+    @Test
+    public void unknownLabelValueGoesToOther() {
+        String other = "adbautoenable_switches_total{result=\"other\"}";
+        String otherCount = "adbautoenable_http_request_seconds_count{endpoint=\"other\"}";
+        String before = Metrics.render();
+        Metrics.SWITCHES.get("no-such-result").inc();
+        Metrics.HTTP_REQUEST.get("/api/no-such-endpoint").observeMs(1);
+        String after = Metrics.render();
+
+        assertEquals(1, sample(after, other) - sample(before, other), 0);
+        assertEquals(1, sample(after, otherCount) - sample(before, otherCount), 0);
+        assertFalse(after.contains("no-such"));
+    }
+
+    @Test
+    public void unlabelledCounterHasNoLabelSet() {
+        String series = "adbautoenable_config_retries_total";
+        String before = Metrics.render();
+        Metrics.CONFIG_RETRIES.inc();
+        assertEquals(1, sample(Metrics.render(), series) - sample(before, series), 0);
+    }
+
+    @Test
+    public void histogramBucketsAreCumulativeInSeconds() {
+        String name = "adbautoenable_adb_handshake_seconds";
+        String labels = "kind=\"fingerprint\"";
+        String le5ms = name + "_bucket{" + labels + ",le=\"0.005\"}";
+        String le10ms = name + "_bucket{" + labels + ",le=\"0.01\"}";
+        String le5s = name + "_bucket{" + labels + ",le=\"5\"}";
+        String inf = name + "_bucket{" + labels + ",le=\"+Inf\"}";
+        String sum = name + "_sum{" + labels + "}";
+        String count = name + "_count{" + labels + "}";
+
+        String before = Metrics.render();
+        Metrics.HANDSHAKE.get("fingerprint").observeMs(3);
+        Metrics.HANDSHAKE.get("fingerprint").observeMs(7);
+        // A bound is inclusive
+        Metrics.HANDSHAKE.get("fingerprint").observeMs(10);
+        Metrics.HANDSHAKE.get("fingerprint").observeMs(6000);
+        String after = Metrics.render();
+
+        assertEquals(1, sample(after, le5ms) - sample(before, le5ms), 0);
+        assertEquals(3, sample(after, le10ms) - sample(before, le10ms), 0);
+        assertEquals(3, sample(after, le5s) - sample(before, le5s), 0);
+        assertEquals(4, sample(after, inf) - sample(before, inf), 0);
+        assertEquals(4, sample(after, count) - sample(before, count), 0);
+        assertEquals(6.02, sample(after, sum) - sample(before, sum), 1e-9);
+        assertEquals(sample(after, inf), sample(after, count), 0);
+        assertEquals(1, count(after, "# TYPE " + name + " histogram\n"));
+    }
+
+    @Test
+    public void gaugesWithLabelsShareOneHeader() {
+        String base = "adbautoenable_test_gauge";
+        Metrics.gauge(base + "{stream=\"a\"}", "Test gauge", "gauge", () -> 2);
+        Metrics.gauge(base + "{stream=\"b\"}", "Test gauge", "gauge", () -> 0.5);
+        Metrics.gauge(base + "_nan", "Unset test gauge", "gauge", () -> Double.NaN);
+        try {
+            String rendered = Metrics.render();
+            assertEquals(1, count(rendered, "# HELP " + base + " Test gauge\n"));
+            assertTrue(rendered.contains(base + "{stream=\"a\"} 2\n"));
+            assertTrue(rendered.contains(base + "{stream=\"b\"} 0.5\n"));
+            assertTrue(rendered.contains(base + "_nan NaN\n"));
+        } finally {
+            Metrics.removeGauge(base + "{stream=\"a\"}");
+            Metrics.removeGauge(base + "{stream=\"b\"}");
+            Metrics.removeGauge(base + "_nan");
+        }
+        assertFalse(Metrics.render().contains(base));
+    }
+}
@@ -0,0 +1,101 @@
+package com.tpn.adbautoenable;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    private static RetryPolicy policy(int maxAttempts, long baseDelayMs, long maxDelayMs, float jitter) {
+        return new RetryPolicy(maxAttempts, baseDelayMs, maxDelayMs, jitter, 120000, 15000, 15000);
+    }
+
+    /** Always draws {@code value}, so jitter is deterministic. */
+    private static Random fixed(double value) {
+        return new Random() {
+            @Override
+            public double nextDouble() {
+                return value;
+            }
+        };
+    }
+
+    @Test
+    public void defaultsAreValid() {
+        assertNull(RetryPolicy.defaults().validate());
+    }
+
+    @Test
+    public void delayDoublesPerFailureWithoutJitter() {
+        RetryPolicy policy = policy(5, 1000, 60000, 0f);
+        assertEquals(1000, policy.delayMs(1, fixed(0.9)));
+        assertEquals(2000, policy.delayMs(2, fixed(0.9)));
+        assertEquals(4000, policy.delayMs(3, fixed(0.9)));
+        assertEquals(8000, policy.delayMs(4, fixed(0.9)));
+    }
+
+    @Test
+    public void delayIsCappedAtMaxDelay() {
+        RetryPolicy policy = policy(20, 1000, 5000, 0f);
+        assertEquals(5000, policy.delayMs(4, fixed(0)));
+        assertEquals(5000, policy.delayMs(20, fixed(0)));
+    }
+
+    @Test
+    public void failureCountBelowOneUsesBaseDelay() {
+        RetryPolicy policy = policy(3, 1000, 5000, 0f);
+        assertEquals(1000, policy.delayMs(0, fixed(0)));
+    }
+
+    @Test
+    public void jitterOnlyShortensTheDelay() {
+        RetryPolicy policy = policy(3, 1000, 30000, 0.5f);
+        assertEquals(4000, policy.delayMs(3, fixed(0)));
+        assertEquals(3000, policy.delayMs(3, fixed(0.5)));
+        assertEquals(2000, policy.delayMs(3, fixed(1.0)));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.delayMs(3, random);
+            assertTrue("delay " + delay, delay > 2000 && delay <= 4000);
+        }
+    }
+
+    @Test
+    public void validateRejectsOutOfRangeFields() {
+        assertNotNull(policy(0, 1000, 5000, 0.5f).validate());
+        assertNotNull(policy(21, 1000, 5000, 0.5f).validate());
+        assertNotNull(policy(3, -1, 5000, 0.5f).validate());
+        assertNotNull(policy(3, 6000, 5000, 0.5f).validate());
+        assertNotNull(policy(3, 1000, 600001, 0.5f).validate());
+        assertNotNull(policy(3, 1000, 5000, -0.1f).validate());
+        assertNotNull(policy(3, 1000, 5000, 1.1f).validate());
+        assertNotNull(new RetryPolicy(3, 1000, 5000, 0.5f, 999, 15000, 15000).validate());
+        assertNotNull(new RetryPolicy(3, 1000, 5000, 0.5f, 120000, 120001, 15000).validate());
+        assertNotNull(new RetryPolicy(3, 1000, 5000, 0.5f, 120000, 15000, 999).validate());
+    }
+
+    @Test
+    public void validateRejectsNonFiniteJitter() {
+        assertNotNull(policy(3, 1000, 5000, Float.NaN).validate());
+        assertNotNull(policy(3, 1000, 5000, Float.POSITIVE_INFINITY).validate());
+    }
+
+    @Test
+    public void validateAcceptsBounds() {
+        assertNull(policy(1, 0, 0, 0f).validate());
+        assertNull(new RetryPolicy(20, 600000, 600000, 1f, 3600000, 120000, 120000).validate());
+    }
+
+    @Test
+    public void toJsonListsEveryField() {
+        assertEquals("{\"maxAttempts\":3,\"baseDelayMs\":2000,\"maxDelayMs\":30000,\"jitter\":0.50,"
+                        + "\"totalBudgetMs\":120000,\"switchBudgetMs\":15000,\"scanBudgetMs\":15000}",
+                RetryPolicy.defaults().toJson());
+    }
+}
@@ -0,0 +1,109 @@
+package com.tpn.adbautoenable;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Each read() on a stream hands back one fill: first the retry line and preamble, then every
+ * event published since the cursor. Events are published before reading so no read waits for
+ * the heartbeat.
+ */
+public class SseRingTest {
+    private static final String RETRY = "retry: 3000\n\n";
+
+    private static String readChunk(InputStream stream) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int count = stream.read(buffer, 0, buffer.length);
+        return count == -1 ? null : new String(buffer, 0, count, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void streamStartsWithPreambleThenBacklog() throws IOException {
+        SseRing ring = new SseRing(8, 4);
+        ring.publish(null, "a");
+        ring.publish("job", "b");
+
+        InputStream stream = ring.subscribe(0, "event: status\ndata: {}\n\n");
+        assertEquals(RETRY + "event: status\ndata: {}\n\n", readChunk(stream));
+        assertEquals("id: 1\ndata: a\n\nid: 2\nevent: job\ndata: b\n\n", readChunk(stream));
+    }
+
+    @Test
+    public void streamResumesAfterLastEventId() throws IOException {
+        SseRing ring = new SseRing(8, 4);
+        ring.publish("log", "one");
+        ring.publish("log", "two");
+        assertEquals(2, ring.getLastId());
+
+        InputStream stream = ring.subscribe(ring.getLastId(), null);
+        assertEquals(RETRY, readChunk(stream));
+        ring.publish("log", "three");
+        assertEquals("id: 3\nevent: log\ndata: three\n\n", readChunk(stream));
+    }
+
+    @Test
+    public void subscriberALapBehindGetsDroppedCount() throws IOException {
+        SseRing ring = new SseRing(4, 4);
+        InputStream stream = ring.subscribe(0, null);
+        assertEquals(RETRY, readChunk(stream));
+        for (int i = 1; i <= 10; i++) {
+            ring.publish(null, "e" + i);
+        }
+
+        assertEquals("event: dropped\ndata: 6\n\n"
+                        + "id: 7\ndata: e7\n\nid: 8\ndata: e8\n\nid: 9\ndata: e9\n\nid: 10\ndata: e10\n\n",
+                readChunk(stream));
+        ring.publish(null, "e11");
+        assertEquals("id: 11\ndata: e11\n\n", readChunk(stream));
+    }
+
+    @Test
+    public void subscriberLimitIsEnforcedAndReleasedOnClose() throws IOException {
+        SseRing ring = new SseRing(8, 2);
+        InputStream first = ring.subscribe(0, null);
+        InputStream second = ring.subscribe(0, null);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(ring.subscribe(0, null));
+        assertEquals(2, ring.getSubscriberCount());
+
+        first.close();
+        first.close();
+        assertEquals(1, ring.getSubscriberCount());
+        assertNotNull(ring.subscribe(0, null));
+    }
+
+    @Test
+    public void closedRingEndsStreamsAfterPendingBytes() throws IOException {
+        SseRing ring = new SseRing(8, 4);
+        InputStream stream = ring.subscribe(0, "data: hello\n\n");
+        ring.close();
+        assertEquals(RETRY + "data: hello\n\n", readChunk(stream));
+        assertNull(readChunk(stream));
+    }
+
+    @Test
+    public void closedStreamEndsAtOnce() throws IOException {
+        SseRing ring = new SseRing(8, 4);
+        InputStream stream = ring.subscribe(0, null);
+        assertEquals(RETRY, readChunk(stream));
+        stream.close();
+        assertNull(readChunk(stream));
+        assertEquals(0, ring.getSubscriberCount());
+    }
+
+    @Test
+    public void appendEventOmitsNegativeIdAndNullName() {
+        StringBuilder out = new StringBuilder();
+        SseRing.appendEvent(out, -1, null, "x");
+        SseRing.appendEvent(out, 5, "status", "{}");
+        assertEquals("data: x\n\nid: 5\nevent: status\ndata: {}\n\n", out.toString());
+    }
+}
@@ -0,0 +1,88 @@
+#!/usr/bin/env python3
+#
+# Loopback stand-in for the app's API, for running batch-benchmark.sh without a device.
+# Answers the endpoints the benchmark uses with the same response shapes; a switch is simulated
+# as a fixed delay (default 3.5s: switchToPort's fixed waits plus a connect). The numbers it
+# produces measure request overhead only, not a device's discovery or adbd restart.
+#
+# Usage: batch-benchmark-stub.py [switch-seconds]
+# Example: batch-benchmark-stub.py 3.5 & SWITCH_SPACING=0 ./batch-benchmark.sh 127.0.0.1 5555 5
+
+import json
+import sys
+import threading
+import time
+import uuid
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+from urllib.parse import parse_qs
+
+SWITCH_SECONDS = float(sys.argv[1]) if len(sys.argv) > 1 else 3.5
+
+# current starts on no port, so the first run switches too
+state = {"target": 5555, "current": 0}
+jobs = {}
+lock = threading.Lock()
+
+
+def run_switch(job):
+    with lock:
+        target = state["target"]
+    if state["current"] != target:
+        time.sleep(SWITCH_SECONDS)
+        state["current"] = target
+    job["state"] = "SUCCEEDED"
+
+
+def status():
+    return {"lastStatus": "Success", "currentPort": state["current"], "targetPort": state["target"]}
+
+
+class Handler(BaseHTTPRequestHandler):
+    protocol_version = "HTTP/1.1"
+
+    def log_message(self, *args):
+        pass
+
+    def reply(self, obj, code=200):
+        # Compact separators, like the app's hand-built JSON
+        body = json.dumps(obj, separators=(",", ":")).encode()
+        self.send_response(code)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+
+    def do_GET(self):
+        if self.path.startswith("/api/jobs/") and self.path.rsplit("/", 1)[1] in jobs:
+            self.reply(jobs[self.path.rsplit("/", 1)[1]])
+        elif self.path == "/api/status":
+            self.reply(status())
+        else:
+            self.reply({"error": "Not found"}, 404)
+
+    def do_POST(self):
+        length = int(self.headers.get("Content-Length") or 0)
+        params = parse_qs(self.rfile.read(length).decode())
+        if self.path == "/api/port":
+            state["target"] = int(params["port"][0])
+            self.reply({"success": True, "targetPort": state["target"]})
+        elif self.path == "/api/switch":
+            job_id = uuid.uuid4().hex[:8]
+            job = {"id": job_id, "state": "RUNNING"}
+            jobs[job_id] = job
+            threading.Thread(target=run_switch, args=(job,), daemon=True).start()
+            self.reply({"success": True, "jobId": job_id, "jobUrl": "/api/jobs/" + job_id})
+        elif self.path == "/api/batch":
+            state["target"] = int(params["port"][0])
+            job = {"state": "RUNNING"}
+            run_switch(job)
+            self.reply({"success": True, "results": [
+                {"op": "port", "ok": True, "targetPort": state["target"]},
+                {"op": "switch", "ok": True, "shared": False, "job": job},
+                {"op": "status", "ok": True, "status": status()},
+            ]})
+        else:
+            self.reply({"error": "Not found"}, 404)
+
+
+ThreadingHTTPServer(("127.0.0.1", 9093), Handler).serve_forever()
@@ -0,0 +1,86 @@
+#!/usr/bin/env bash
+#
+# Compares provisioning one device with individual API calls against a single /api/batch call.
+#
+#   Individual: POST /api/port, POST /api/switch, poll /api/jobs/<id> until done, GET /api/status
+#   Batch:      POST /api/batch ops=port,switch,status
+#
+# Usage: batch-benchmark.sh <device-ip> [target-port] [runs]
+# Example: batch-benchmark.sh 192.168.1.50 5555 5
+#
+# Runs alternate between target-port and target-port+1, so every run performs a real switch
+# instead of hitting the "already on the target port" fast path.
+#
+# /api/switch allows one call per 10 seconds, so the script waits SWITCH_SPACING (default 11)
+# seconds between switches. Those waits are not counted in the timings.
+#
+# Without a device, run it against utils/batch-benchmark-stub.py on 127.0.0.1 with SWITCH_SPACING=0.
+
+set -euo pipefail
+
+if [ $# -lt 1 ]; then
+    echo "Usage: $0 <device-ip> [target-port] [runs]"
+    exit 1
+fi
+
+BASE="http://$1:9093"
+BASE_PORT="${2:-5555}"
+RUNS="${3:-5}"
+SWITCH_SPACING="${SWITCH_SPACING:-11}"
+PORT=$BASE_PORT
+
+next_port() {
+    if [ "$PORT" -eq "$BASE_PORT" ]; then
+        PORT=$((BASE_PORT + 1))
+    else
+        PORT=$BASE_PORT
+    fi
+}
+
+now_ms() {
+    date +%s%3N
+}
+
+individual() {
+    local requests=0 job_id state
+    curl -sf -d "port=$PORT" "$BASE/api/port" > /dev/null; requests=$((requests + 1))
+    job_id=$(curl -sf -X POST "$BASE/api/switch" | sed -n 's/.*"jobId" *: *"\([^"]*\)".*/\1/p'); requests=$((requests + 1))
+    if [ -z "$job_id" ]; then
+        echo "No jobId in /api/switch response" >&2
+        exit 1
+    fi
+    while :; do
+        state=$(curl -sf "$BASE/api/jobs/$job_id" | sed -n 's/.*"state" *: *"\([A-Z]*\)".*/\1/p'); requests=$((requests + 1))
+        case "$state" in
+            QUEUED|RUNNING) sleep 0.5 ;;
+            *) break ;;
+        esac
+    done
+    curl -sf "$BASE/api/status" > /dev/null; requests=$((requests + 1))
+    echo "$requests"
+}
+
+batch() {
+    curl -sf -d "ops=port,switch,status&port=$PORT" "$BASE/api/batch" > /dev/null
+    echo 1
+}
+
+run() {
+    local name=$1 total_ms=0 total_requests=0 start requests elapsed
+    for i in $(seq 1 "$RUNS"); do
+        next_port
+        start=$(now_ms)
+        requests=$($name)
+        elapsed=$(( $(now_ms) - start ))
+        total_ms=$((total_ms + elapsed))
+        total_requests=$((total_requests + requests))
+        printf "  %-10s run %d: %5d ms, %d requests (-> port %d)\n" "$name" "$i" "$elapsed" "$requests" "$PORT"
+        sleep "$SWITCH_SPACING"
+    done
+    printf "  %-10s avg: %5d ms, %d requests\n\n" "$name" $((total_ms / RUNS)) $((total_requests / RUNS))
+}
+
+echo "Benchmarking $BASE (target ports $BASE_PORT/$((BASE_PORT + 1)), $RUNS runs each)"
+echo
+run individual
+run batch